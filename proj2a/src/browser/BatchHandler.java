@@ -0,0 +1,173 @@
+package browser;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.reflect.TypeToken;
+import spark.Request;
+import spark.Response;
+import spark.Route;
+
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Answers many queries in one request. The body is a JSON array of queries such as
+ *
+ *   [{"endpoint": "historytext", "words": ["cat", "dog"], "startYear": 1950},
+ *    {"endpoint": "topwords", "k": 5}]
+ *
+ * where every field but endpoint is optional and defaults as in a GET request.
+ * The queries run in parallel, by default as many at once as there are cores, each
+ * through the handler registered for its endpoint, so they share its response cache
+ * and in-flight coalescing. Results are streamed back as newline-delimited JSON in
+ * the order they complete, one object per query:
+ *
+ *   {"index": 1, "result": "..."}  or  {"index": 0, "error": "..."}
+ *
+ * where index is the position of the query in the array and result is exactly the
+ * body the GET endpoint would have returned. Queries whose response is sent as raw
+ * bytes, such as /historytext in the binary format, are answered with an error. The
+ * lines are gzip-compressed if the request accepts it.
+ */
+public class BatchHandler implements Route {
+    /** Largest number of queries accepted in one batch. */
+    public static final int MAX_QUERIES = 10000;
+
+    private static final Gson gson = new Gson();
+
+    private final Map<String, NgordnetQueryHandler> handlers;
+    private final int parallelism;
+
+    /** One query of a batch, as parsed from JSON. */
+    private static class BatchQuery {
+        String endpoint;
+        List<String> words;
+        Integer startYear;
+        Integer endYear;
+        Integer k;
+        String prefixes;
+        String smoothing;
+        String format;
+
+        NgordnetQuery toQuery() {
+            return new NgordnetQuery(words == null ? List.of() : words,
+                    startYear == null ? NgordnetQueryHandler.DEFAULT_START_YEAR : startYear,
+                    endYear == null ? NgordnetQueryHandler.DEFAULT_END_YEAR : endYear,
+                    k == null ? 0 : k,
+                    "sum".equals(prefixes),
+                    smoothing == null ? "" : smoothing,
+                    format == null ? "" : format);
+        }
+    }
+
+    /**
+     * Constructs a BatchHandler that dispatches each query to the handler HANDLERS maps its
+     * endpoint to. HANDLERS is read when a batch arrives, so handlers registered later are
+     * found too.
+     */
+    public BatchHandler(Map<String, NgordnetQueryHandler> handlers) {
+        this(handlers, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Constructs a BatchHandler as above that answers at most PARALLELISM queries of a
+     * batch at once.
+     */
+    public BatchHandler(Map<String, NgordnetQueryHandler> handlers, int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Need a parallelism of at least 1");
+        }
+        this.handlers = handlers;
+        this.parallelism = parallelism;
+    }
+
+    @Override
+    public Object handle(Request request, Response response) throws Exception {
+        List<BatchQuery> queries;
+        try {
+            queries = gson.fromJson(request.body(), new TypeToken<List<BatchQuery>>() { }.getType());
+        } catch (JsonParseException e) {
+            response.status(400);
+            return "Expected a JSON array of queries: " + e.getMessage();
+        }
+        if (queries == null || queries.size() > MAX_QUERIES) {
+            response.status(400);
+            return "Expected a JSON array of at most " + MAX_QUERIES + " queries";
+        }
+
+        response.type("application/x-ndjson");
+        OutputStream out = new ResponseBody(response, NgordnetQueryHandler.acceptsGzip(request));
+        /* Every query gets a virtual thread, but only PARALLELISM of them run at once, so a
+         * large batch cannot take over the handlers' CPUs. */
+        Semaphore permits = new Semaphore(parallelism);
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            ExecutorCompletionService<String> completed = new ExecutorCompletionService<>(executor);
+            Map<Future<String>, Integer> indexes = new HashMap<>();
+            for (int i = 0; i < queries.size(); i += 1) {
+                int index = i;
+                BatchQuery query = queries.get(i);
+                indexes.put(completed.submit(() -> {
+                    permits.acquire();
+                    try {
+                        return answer(index, query);
+                    } finally {
+                        permits.release();
+                    }
+                }), index);
+            }
+            for (int i = 0; i < queries.size(); i += 1) {
+                Future<String> done = completed.take();
+                String line;
+                try {
+                    line = done.get();
+                } catch (ExecutionException e) {
+                    /* Earlier lines may have been sent already, so the failure is reported
+                     * in the line of its query like any other. */
+                    line = errorLine(indexes.get(done), String.valueOf(e.getCause()));
+                }
+                out.write((line + "\n").getBytes(StandardCharsets.UTF_8));
+                out.flush();
+            }
+        }
+        out.close();
+        return "";
+    }
+
+    /** Returns the line of the response for QUERY, which is at INDEX in the batch. */
+    private String answer(int index, BatchQuery query) {
+        NgordnetQueryHandler handler = query == null || query.endpoint == null ? null : handlers.get(query.endpoint);
+        if (handler == null) {
+            return errorLine(index, "Unknown endpoint: " + (query == null ? null : query.endpoint));
+        }
+        try {
+            NgordnetQuery q = query.toQuery();
+            if (handler.rawResponse(q) != null) {
+                return errorLine(index, "Format " + q.format() + " of " + query.endpoint
+                        + " is only sent as raw bytes; query /" + query.endpoint + " directly");
+            }
+            /* The response is already JSON, so it is spliced in rather than parsed again. */
+            return "{\"index\":" + index + ",\"result\":" + handler.respond(q) + "}";
+        } catch (RuntimeException e) {
+            handler.metrics().error();
+            return errorLine(index, String.valueOf(e.getMessage()));
+        }
+    }
+
+    /** Returns the line of the response reporting that the query at INDEX failed with MESSAGE. */
+    private static String errorLine(int index, String message) {
+        JsonObject line = new JsonObject();
+        line.addProperty("index", index);
+        line.addProperty("error", message);
+        return gson.toJson(line);
+    }
+}
@@ -0,0 +1,107 @@
+package browser;
+
+import utils.LatencyHistogram;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * The metrics of one NgordnetQueryHandler: a latency histogram for each stage of
+ * answering a query, a count of failed queries, and any further counters, gauges and
+ * histograms the handler registers, such as those of its caches. A MetricsHandler
+ * publishes them under the endpoint the handler is registered at.
+ */
+public class EndpointMetrics {
+    /** The stages of answering a query whose durations are recorded. */
+    public enum Stage {
+        /** Reading the query from the request. */
+        PARSE,
+        /** Looking up the data the query asks for in the NGramMap. */
+        LOOKUP,
+        /** Rendering a chart. */
+        RENDER,
+        /** Encoding the response, as JSON or otherwise, and writing it out. */
+        ENCODE,
+        /** The whole request, from receiving it to returning from the handler. */
+        TOTAL;
+
+        /** Returns the name of this stage as a metric label. */
+        public String label() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    /** The kinds of further metrics, named as in the Prometheus text format. */
+    enum Type {
+        COUNTER, GAUGE
+    }
+
+    /** A further counter or gauge, read when the metrics are published. */
+    record Sampled(String name, String help, Type type, LongSupplier value) {
+    }
+
+    /** A further histogram of durations. */
+    record Histogram(String name, String help, LatencyHistogram histogram) {
+    }
+
+    private final EnumMap<Stage, LatencyHistogram> stages = new EnumMap<>(Stage.class);
+    private final LongAdder errors = new LongAdder();
+    private final List<Sampled> sampled = new ArrayList<>();
+    private final List<Histogram> histograms = new ArrayList<>();
+
+    public EndpointMetrics() {
+        for (Stage stage : Stage.values()) {
+            stages.put(stage, new LatencyHistogram());
+        }
+    }
+
+    /** Records that STAGE of a query took NANOS nanoseconds. */
+    public void record(Stage stage, long nanos) {
+        stages.get(stage).record(nanos);
+    }
+
+    /** Returns the histogram of the durations of STAGE. */
+    public LatencyHistogram stage(Stage stage) {
+        return stages.get(stage);
+    }
+
+    /** Counts a query that failed. */
+    public void error() {
+        errors.increment();
+    }
+
+    /** Returns the number of queries that failed. */
+    public long errors() {
+        return errors.sum();
+    }
+
+    /**
+     * Publishes the counter NAME, described by HELP, whose value VALUE returns. NAME should
+     * follow the Prometheus conventions, such as ending in "_total".
+     */
+    public synchronized void counter(String name, String help, LongSupplier value) {
+        sampled.add(new Sampled(name, help, Type.COUNTER, value));
+    }
+
+    /** Publishes the gauge NAME, described by HELP, whose value VALUE returns. */
+    public synchronized void gauge(String name, String help, LongSupplier value) {
+        sampled.add(new Sampled(name, help, Type.GAUGE, value));
+    }
+
+    /** Publishes HISTOGRAM, of durations in nanoseconds, as NAME in seconds, described by HELP. */
+    public synchronized void histogram(String name, String help, LatencyHistogram histogram) {
+        histograms.add(new Histogram(name, help, histogram));
+    }
+
+    synchronized List<Sampled> sampled() {
+        return List.copyOf(sampled);
+    }
+
+    synchronized List<Histogram> histograms() {
+        return List.copyOf(histograms);
+    }
+}
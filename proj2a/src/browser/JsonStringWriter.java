@@ -0,0 +1,59 @@
+package browser;
+
+import com.google.gson.Gson;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Writes text as one JSON string literal, escaping each piece as it arrives, so a
+ * large response can be sent as it is computed. The bytes written are the same as
+ * those of Gson.toJson on the whole text. The opening quote is only written with the
+ * first piece of text or on close, so nothing reaches the client if the response
+ * fails before producing any text.
+ */
+class JsonStringWriter extends Writer {
+    private static final Gson gson = new Gson();
+
+    private final Writer out;
+    private boolean started;
+
+    /** Constructs a JsonStringWriter writing the escaped literal to OUT. */
+    JsonStringWriter(Writer out) {
+        this.out = out;
+    }
+
+    @Override
+    public void write(char[] text, int offset, int length) throws IOException {
+        write(new String(text, offset, length));
+    }
+
+    @Override
+    public void write(String text) throws IOException {
+        start();
+        /* Gson escapes character by character, so escaping the pieces separately and
+         * joining them gives the escaped whole. */
+        String json = gson.toJson(text);
+        out.write(json, 1, json.length() - 2);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    /** Writes the closing quote and flushes, but leaves the underlying writer open. */
+    @Override
+    public void close() throws IOException {
+        start();
+        out.write('"');
+        out.flush();
+    }
+
+    private void start() throws IOException {
+        if (!started) {
+            out.write('"');
+            started = true;
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package browser;
+
+import spark.Request;
+import spark.Response;
+import spark.Route;
+import utils.LatencyHistogram;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Publishes the metrics of every handler of a server in the Prometheus text exposition
+ * format, labeled with the endpoint each handler is registered at. Stage latencies are
+ * published both as a histogram with fixed buckets, for aggregating across servers, and
+ * as gauges of a few percentiles, which the underlying HDR-style histograms give to
+ * within 1/16 of their value.
+ */
+public class MetricsHandler implements Route {
+    /** Upper bounds, in seconds, of the buckets of the published histograms. */
+    private static final double[] BUCKETS = {0.0001, 0.00025, 0.0005, 0.001, 0.0025, 0.005,
+        0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10};
+
+    /** Percentiles published for every stage. */
+    private static final double[] PERCENTILES = {0.5, 0.9, 0.99, 0.999};
+
+    private static final String DURATION = "ngordnet_request_duration_seconds";
+    private static final String PERCENTILE = "ngordnet_request_duration_percentile_seconds";
+    private static final String ERRORS = "ngordnet_request_errors_total";
+
+    private final Map<String, NgordnetQueryHandler> handlers;
+
+    /**
+     * Constructs a MetricsHandler that publishes the metrics of the handlers HANDLERS maps
+     * their endpoints to. HANDLERS is read on every request, so handlers registered later
+     * are published too.
+     */
+    public MetricsHandler(Map<String, NgordnetQueryHandler> handlers) {
+        this.handlers = handlers;
+    }
+
+    @Override
+    public Object handle(Request request, Response response) {
+        response.type("text/plain; version=0.0.4; charset=utf-8");
+        return render(new TreeMap<>(handlers));
+    }
+
+    /** Returns the metrics of HANDLERS, keyed by endpoint, in the text exposition format. */
+    static String render(Map<String, NgordnetQueryHandler> handlers) {
+        StringBuilder out = new StringBuilder();
+
+        /* Every sample of a metric has to follow its HELP and TYPE lines, so samples are
+         * grouped by metric across endpoints. */
+        header(out, DURATION, "Time spent in each stage of answering a query.", "histogram");
+        List<String> percentiles = new ArrayList<>();
+        for (Map.Entry<String, NgordnetQueryHandler> entry : handlers.entrySet()) {
+            EndpointMetrics metrics = entry.getValue().metrics();
+            for (EndpointMetrics.Stage stage : EndpointMetrics.Stage.values()) {
+                LatencyHistogram.Snapshot snapshot = metrics.stage(stage).snapshot();
+                if (snapshot.count() == 0) {
+                    continue;
+                }
+                String labels = "endpoint=\"" + escape(entry.getKey()) + "\",stage=\"" + stage.label() + "\"";
+                histogram(out, DURATION, labels, snapshot);
+                for (double p : PERCENTILES) {
+                    percentiles.add(PERCENTILE + "{" + labels + ",percentile=\"" + decimal(p) + "\"} "
+                            + seconds(snapshot.percentile(p)) + "\n");
+                }
+            }
+        }
+        header(out, PERCENTILE, "Percentiles of the time spent in each stage of answering a query.", "gauge");
+        percentiles.forEach(out::append);
+
+        header(out, ERRORS, "Queries that failed.", "counter");
+        for (Map.Entry<String, NgordnetQueryHandler> entry : handlers.entrySet()) {
+            sample(out, ERRORS, "endpoint=\"" + escape(entry.getKey()) + "\"", entry.getValue().metrics().errors());
+        }
+
+        Map<String, List<String>> sampled = new LinkedHashMap<>();
+        Map<String, String> headers = new LinkedHashMap<>();
+        for (Map.Entry<String, NgordnetQueryHandler> entry : handlers.entrySet()) {
+            String labels = "endpoint=\"" + escape(entry.getKey()) + "\"";
+            EndpointMetrics metrics = entry.getValue().metrics();
+            for (EndpointMetrics.Sampled metric : metrics.sampled()) {
+                headers.putIfAbsent(metric.name(), headerLines(metric.name(), metric.help(),
+                        metric.type().name().toLowerCase(Locale.ROOT)));
+                sampled.computeIfAbsent(metric.name(), name -> new ArrayList<>())
+                        .add(metric.name() + "{" + labels + "} " + metric.value().getAsLong() + "\n");
+            }
+            for (EndpointMetrics.Histogram metric : metrics.histograms()) {
+                headers.putIfAbsent(metric.name(), headerLines(metric.name(), metric.help(), "histogram"));
+                StringBuilder samples = new StringBuilder();
+                histogram(samples, metric.name(), labels, metric.histogram().snapshot());
+                sampled.computeIfAbsent(metric.name(), name -> new ArrayList<>()).add(samples.toString());
+            }
+        }
+        for (Map.Entry<String, List<String>> metric : sampled.entrySet()) {
+            out.append(headers.get(metric.getKey()));
+            metric.getValue().forEach(out::append);
+        }
+        return out.toString();
+    }
+
+    private static void header(StringBuilder out, String name, String help, String type) {
+        out.append(headerLines(name, help, type));
+    }
+
+    private static String headerLines(String name, String help, String type) {
+        return "# HELP " + name + " " + help.replace("\\", "\\\\").replace("\n", "\\n") + "\n"
+                + "# TYPE " + name + " " + type + "\n";
+    }
+
+    private static void sample(StringBuilder out, String name, String labels, long value) {
+        out.append(name).append('{').append(labels).append("} ").append(value).append('\n');
+    }
+
+    /** Appends the buckets, sum and count of SNAPSHOT as the histogram NAME with LABELS. */
+    private static void histogram(StringBuilder out, String name, String labels, LatencyHistogram.Snapshot snapshot) {
+        for (double bound : BUCKETS) {
+            long count = snapshot.countAtMost((long) (bound * 1e9));
+            out.append(name).append("_bucket{").append(labels).append(",le=\"").append(decimal(bound))
+                    .append("\"} ").append(count).append('\n');
+        }
+        out.append(name).append("_bucket{").append(labels).append(",le=\"+Inf\"} ").append(snapshot.count()).append('\n');
+        out.append(name).append("_sum{").append(labels).append("} ").append(seconds(snapshot.sum())).append('\n');
+        out.append(name).append("_count{").append(labels).append("} ").append(snapshot.count()).append('\n');
+    }
+
+    /** Returns VALUE as a plain decimal, such as 0.0001 rather than 1.0E-4, for a label. */
+    private static String decimal(double value) {
+        return BigDecimal.valueOf(value).stripTrailingZeros().toPlainString();
+    }
+
+    private static String seconds(long nanos) {
+        return Double.toString(nanos / 1e9);
+    }
+
+    /** Returns VALUE escaped for use in a label value. */
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+}
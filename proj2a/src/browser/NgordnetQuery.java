@@ -4,9 +4,33 @@ import java.util.List;
 
 /**
  * Created by hug.
+ *
+ * A word ending in '*' stands for every word starting with what comes before the
+ * '*'. If sumPrefixes is set, such a word is answered with the summed history of
+ * its matches instead of one history per match.
+ *
+ * smoothing names a window operator to apply to each history before it is returned,
+ * such as "ma:5" or "ewma:0.3" (see ngrams.Smoothing); it is empty for none.
+ *
+ * format names the form of the response, which depends on the endpoint: for a chart,
+ * "png" for an image, "svg" for a vector image, or "points" for the downsampled data
+ * (see plotting.ChartFormat); for text histories, "text", "json" or "binary" (see
+ * main.SeriesFormat). It is empty for the default of the endpoint.
  */
 public record NgordnetQuery(List<String> words,
         int startYear,
         int endYear,
-        int k) {
+        int k,
+        boolean sumPrefixes,
+        String smoothing,
+        String format) {
+
+    public NgordnetQuery(List<String> words, int startYear, int endYear, int k) {
+        this(words, startYear, endYear, k, false, "");
+    }
+
+    public NgordnetQuery(List<String> words, int startYear, int endYear, int k,
+                         boolean sumPrefixes, String smoothing) {
+        this(words, startYear, endYear, k, sumPrefixes, smoothing, "");
+    }
 }
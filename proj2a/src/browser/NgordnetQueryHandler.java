@@ -6,13 +6,146 @@ import spark.Request;
 import spark.Response;
 import spark.Route;
 
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Locale;
 
 public abstract class NgordnetQueryHandler implements Route {
+    /** Default byte budget of the response cache of each handler. */
+    public static final long DEFAULT_CACHE_BYTES = 64L << 20;
+    /** Default time a cached response stays valid. */
+    public static final long DEFAULT_CACHE_TTL_MILLIS = 10 * 60 * 1000;
+
+    /** Start year of a query that does not set one. */
+    public static final int DEFAULT_START_YEAR = 1900;
+    /** End year of a query that does not set one. */
+    public static final int DEFAULT_END_YEAR = 2020;
+
+    /** Size of the buffer between a streamed response and its encoding to bytes. */
+    private static final int STREAM_BUFFER_CHARS = 1 << 13;
+
+    /**
+     * Ends the text of a streamed response that failed after part of it was sent. The
+     * client finds it at the end of the JSON string in place of the rest of the text.
+     */
+    public static final String STREAM_ERROR_MARKER = "\n[error: response cut short]\n";
+
+    /** Responses shorter than this are sent uncompressed even to clients that accept gzip. */
+    public static final int MIN_GZIP_CHARS = 1024;
+
     public abstract String handle(browser.NgordnetQuery q);
     private static final Gson gson = new Gson();
 
+    private volatile ResponseCache cache = new ResponseCache(DEFAULT_CACHE_BYTES, DEFAULT_CACHE_TTL_MILLIS);
+    private final SingleFlight<InFlightQuery, String> inFlight = new SingleFlight<>();
+    private final EndpointMetrics metrics = new EndpointMetrics();
+
+    /** A query being answered, with the version of the data it is answered from. */
+    private record InFlightQuery(NgordnetQuery query, long version) {
+    }
+
+    /** A response sent as raw bytes of CONTENTTYPE, written by WRITER, rather than as a JSON string. */
+    public record RawResponse(String contentType, RawWriter writer) {
+    }
+
+    /** Writes the bytes of a raw response. */
+    public interface RawWriter {
+        void writeTo(OutputStream out) throws IOException;
+    }
+
+    protected NgordnetQueryHandler() {
+        metrics.counter("ngordnet_response_cache_hits_total", "Queries answered from the response cache.",
+                () -> cache.hits());
+        metrics.counter("ngordnet_response_cache_misses_total", "Queries not found in the response cache.",
+                () -> cache.misses());
+        metrics.counter("ngordnet_response_cache_evictions_total",
+                "Responses evicted to keep the response cache within its budget.", () -> cache.evictions());
+        metrics.gauge("ngordnet_response_cache_bytes", "Approximate size of the response cache.",
+                () -> cache.bytes());
+        metrics.counter("ngordnet_coalesced_queries_total",
+                "Queries that shared the computation of an identical query in flight.", inFlight::coalesced);
+    }
+
+    /**
+     * Returns the metrics of this handler. The handler records the parse, encode and total
+     * time of every request and counts failures; subclasses record the stages they
+     * perform and may publish further metrics. Responses that are streamed or sent raw are
+     * encoded by the subclass, which records one encode sample for each.
+     */
+    public EndpointMetrics metrics() {
+        return metrics;
+    }
+
+    /**
+     * Returns the version of the data this handler answers from. Cached responses computed
+     * at another version are not served, so a handler whose data can be reloaded returns a
+     * version that changes with every reload. Handlers with fixed data keep the default.
+     */
+    protected long dataVersion() {
+        return 0;
+    }
+
+    /** Returns the cache of serialized responses of this handler. */
+    public ResponseCache cache() {
+        return cache;
+    }
+
+    /**
+     * Returns the coalescing of this handler: concurrent requests for the same query at the
+     * same data version share one call to handle(query).
+     */
+    public SingleFlight<?, String> inFlight() {
+        return inFlight;
+    }
+
+    /**
+     * Returns true if RESPONSE, just returned by handle(Q), may be cached and served to
+     * later identical queries. A handler that sometimes answers with a degraded response,
+     * for example under load, returns false for those. Returns true by default.
+     */
+    protected boolean shouldCache(NgordnetQuery q, String response) {
+        return true;
+    }
+
+    /**
+     * Returns true if the response to Q should be streamed: written to the client piece
+     * by piece by stream(Q, out) rather than built whole by handle(Q), cached and then
+     * serialized. Handlers whose responses can grow large override this, together with
+     * stream. Returns false by default.
+     */
+    protected boolean shouldStream(NgordnetQuery q) {
+        return false;
+    }
+
+    /**
+     * Writes the same text handle(Q) returns to OUT, piece by piece. The default writes
+     * the result of handle(Q) at once.
+     */
+    protected void stream(NgordnetQuery q, Writer out) throws IOException {
+        out.write(handle(q));
+    }
+
+    /**
+     * Returns the response to Q if it is sent as raw bytes, such as a binary encoding of
+     * its data, or null if it is the JSON string of handle(Q). Raw responses are neither
+     * cached nor coalesced. Handlers should reject a bad Q here, before anything is
+     * written, by throwing an IllegalArgumentException. Returns null by default.
+     */
+    protected RawResponse rawResponse(NgordnetQuery q) {
+        return null;
+    }
+
+    /** Replaces the cache of serialized responses of this handler with CACHE. */
+    public void setCache(ResponseCache cache) {
+        this.cache = cache;
+    }
+
     private static List<String> commaSeparatedStringToList(String s) {
         String[] requestedWords = s.split(",");
         for (int i = 0; i < requestedWords.length; i += 1) {
@@ -31,13 +164,13 @@ public abstract class NgordnetQueryHandler implements Route {
         try {
             startYear = Integer.parseInt(qm.get("startYear").value());
         } catch(RuntimeException e) {
-            startYear = 1900;
+            startYear = DEFAULT_START_YEAR;
         }
 
         try {
             endYear = Integer.parseInt(qm.get("endYear").value());
         } catch(RuntimeException e) {
-            endYear = 2020;
+            endYear = DEFAULT_END_YEAR;
         }
 
         try {
@@ -46,14 +179,151 @@ public abstract class NgordnetQueryHandler implements Route {
             k = 0;
         }
 
-        return new browser.NgordnetQuery(words, startYear, endYear, k);
+        boolean sumPrefixes = "sum".equals(qm.get("prefixes").value());
+
+        String smoothing = qm.get("smoothing").value();
+        if (smoothing == null) {
+            smoothing = "";
+        }
+
+        String format = qm.get("format").value();
+        if (format == null) {
+            format = "";
+        }
+
+        return new browser.NgordnetQuery(words, startYear, endYear, k, sumPrefixes, smoothing, format);
     }
 
     @Override
     public String handle(Request request, Response response) throws Exception {
+        long start = System.nanoTime();
+        try {
+            return serve(request, response, start);
+        } catch (Exception e) {
+            metrics.error();
+            throw e;
+        } finally {
+            metrics.record(EndpointMetrics.Stage.TOTAL, System.nanoTime() - start);
+        }
+    }
+
+    private String serve(Request request, Response response, long start) throws Exception {
         QueryParamsMap qm = request.queryMap();
-        NgordnetQuery nq = readQueryMap(qm);
-        String queryResult = handle(nq);
-        return gson.toJson(queryResult);
+        NgordnetQuery q = readQueryMap(qm);
+        NgordnetQuery nq = ResponseCache.normalize(q);
+        metrics.record(EndpointMetrics.Stage.PARSE, System.nanoTime() - start);
+        boolean gzip = acceptsGzip(request);
+        response.header("Vary", "Accept-Encoding");
+
+        /* Bodies written here are not closed on failure, and hold back their first bytes,
+         * so a query that fails before filling a buffer still gets an error status. */
+        RawResponse raw = rawResponse(nq);
+        if (raw != null) {
+            response.type(raw.contentType());
+            ResponseBody body = new ResponseBody(response, gzip);
+            raw.writer().writeTo(body);
+            body.close();
+            return "";
+        }
+        if (shouldStream(nq)) {
+            response.type("application/json");
+            ResponseBody out = new ResponseBody(response, gzip);
+            Writer body = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8),
+                    STREAM_BUFFER_CHARS);
+            JsonStringWriter json = new JsonStringWriter(body);
+            try {
+                stream(nq, json);
+            } catch (IOException | RuntimeException e) {
+                if (!out.committed()) {
+                    throw e;
+                }
+                /* Part of the text and a 200 status are already sent, so the text is ended
+                 * with a marker the client can look for instead of passing for complete. */
+                metrics.error();
+                json.write(STREAM_ERROR_MARKER);
+            }
+            json.close();
+            body.close();
+            return "";
+        }
+
+        /* One encode sample per request: serializing the response, if this request did,
+         * plus compressing and writing it, if it is sent here rather than by Spark. */
+        long[] encodeNanos = new long[1];
+        String json = respond(nq, encodeNanos);
+        if (!gzip || json.length() < MIN_GZIP_CHARS) {
+            metrics.record(EndpointMetrics.Stage.ENCODE, encodeNanos[0]);
+            return json;
+        }
+        long writeStart = System.nanoTime();
+        response.type("application/json");
+        try (OutputStream body = new ResponseBody(response, true)) {
+            body.write(json.getBytes(StandardCharsets.UTF_8));
+        }
+        metrics.record(EndpointMetrics.Stage.ENCODE, encodeNanos[0] + System.nanoTime() - writeStart);
+        return "";
+    }
+
+    /**
+     * Returns true if REQUEST accepts a gzip-compressed response: if its Accept-Encoding
+     * header lists gzip without a quality of 0.
+     */
+    public static boolean acceptsGzip(Request request) {
+        String accepted = request.headers("Accept-Encoding");
+        if (accepted == null) {
+            return false;
+        }
+        for (String coding : accepted.split(",")) {
+            String[] parts = coding.split(";");
+            if (!parts[0].trim().equalsIgnoreCase("gzip")) {
+                continue;
+            }
+            for (int i = 1; i < parts.length; i += 1) {
+                String parameter = parts[i].trim().toLowerCase(Locale.ROOT);
+                if (parameter.startsWith("q=") && parameter.substring(2).trim().matches("0(\\.0*)?")) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Returns the JSON response to Q, as sent to the browser for a query that is not
+     * streamed: from the cache if possible, otherwise from handle(Q), sharing the call
+     * with any identical query in flight.
+     */
+    public String respond(NgordnetQuery q) {
+        return respond(q, new long[1]);
+    }
+
+    /**
+     * Returns the JSON response to Q as respond(Q) does, adding the time spent serializing
+     * it to ENCODENANOS[0] if this call is the one that serialized it.
+     */
+    private String respond(NgordnetQuery q, long[] encodeNanos) {
+        NgordnetQuery nq = ResponseCache.normalize(q);
+        ResponseCache responses = cache;
+        long version = dataVersion();
+        String cached = responses.get(nq, version);
+        if (cached != null) {
+            return cached;
+        }
+        return inFlight.run(new InFlightQuery(nq, version), () -> {
+            /* A call that just finished may have stored the response after the lookup above. */
+            String stored = responses.peek(nq, version);
+            if (stored != null) {
+                return stored;
+            }
+            String response = handle(nq);
+            long encodeStart = System.nanoTime();
+            String json = gson.toJson(response);
+            encodeNanos[0] += System.nanoTime() - encodeStart;
+            if (shouldCache(nq, response)) {
+                responses.put(nq, version, json);
+            }
+            return json;
+        });
     }
 }
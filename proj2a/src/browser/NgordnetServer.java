@@ -1,15 +1,53 @@
 package browser;
 
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.util.thread.ThreadPool;
+import spark.embeddedserver.EmbeddedServers;
+import spark.embeddedserver.jetty.EmbeddedJettyFactory;
+import spark.embeddedserver.jetty.JettyServerFactory;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
 import static spark.Spark.*;
 
 /**
  * Created by hug.
  */
 public class NgordnetServer {
+    private final Map<String, NgordnetQueryHandler> handlers = new ConcurrentHashMap<>();
+
     public void register(String URL, NgordnetQueryHandler nqh) {
+        handlers.put(URL, nqh);
         get(URL, nqh);
     }
 
+    /**
+     * Serves POST requests to URL with a BatchHandler, which answers a JSON array of
+     * queries to any of the handlers registered on this server.
+     */
+    public void registerBatch(String URL) {
+        post(URL, new BatchHandler(handlers));
+    }
+
+    /**
+     * Serves GET requests to URL with a MetricsHandler, which publishes the metrics of the
+     * handlers registered on this server in the Prometheus text format.
+     */
+    public void registerMetrics(String URL) {
+        get(URL, new MetricsHandler(handlers));
+    }
+
+    /**
+     * Makes the server run every request on its own virtual thread instead of on Jetty's
+     * pool of platform threads. Charts still render on the bounded plotting.RenderPool of
+     * the history handler. Must be called before startUp.
+     */
+    public void useVirtualThreads() {
+        EmbeddedServers.add(EmbeddedServers.Identifiers.JETTY,
+                new EmbeddedJettyFactory(new VirtualThreadServerFactory()));
+    }
+
     public void startUp() {
         staticFiles.externalLocation("static");
 
@@ -21,4 +59,17 @@ public class NgordnetServer {
             response.header("Access-Control-Allow-Headers", "*");
         });
     }
+
+    /** Creates Jetty servers whose thread pool is a VirtualThreadPool, whatever Spark asks for. */
+    private static class VirtualThreadServerFactory implements JettyServerFactory {
+        @Override
+        public Server create(int maxThreads, int minThreads, int threadTimeoutMillis) {
+            return new Server(new VirtualThreadPool());
+        }
+
+        @Override
+        public Server create(ThreadPool threadPool) {
+            return new Server(new VirtualThreadPool());
+        }
+    }
 }
@@ -0,0 +1,112 @@
+package browser;
+
+import spark.Response;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * The body of a response written to the servlet output stream, optionally compressed
+ * with gzip. The first bytes are held back until a buffer's worth has been written or
+ * the body is flushed or closed; only then is the Content-Encoding header set and
+ * the response committed. A response that fails before that is still free to answer
+ * with an error status, and without being labelled as gzip.
+ *
+ * Closing a ResponseBody finishes the body and flushes it, but leaves the servlet
+ * output stream open for Spark. Without a content length, Jetty sends the body in
+ * chunks as it is flushed.
+ */
+class ResponseBody extends OutputStream {
+    /** Size of the buffer between the body and the servlet output stream. */
+    static final int BUFFER_BYTES = 1 << 13;
+
+    private final Response response;
+    private final boolean gzip;
+    private final Held held = new Held();
+    private final OutputStream out;
+
+    /** Constructs the body of RESPONSE, compressed with gzip if GZIP is set. */
+    ResponseBody(Response response, boolean gzip) throws IOException {
+        this.response = response;
+        this.gzip = gzip;
+        /* Sync flush lets a flush push out what was compressed so far, for streamed bodies. */
+        out = gzip ? new GZIPOutputStream(held, BUFFER_BYTES, true) : held;
+    }
+
+    /** Returns true once bytes of the body, and so the status and headers, have been sent. */
+    boolean committed() {
+        return held.servlet != null;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        out.write(b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        out.write(b, off, len);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+
+    /** Buffers the encoded body, and commits the response when the buffer is first sent. */
+    private class Held extends OutputStream {
+        private final byte[] buffer = new byte[BUFFER_BYTES];
+        private int count;
+        private OutputStream servlet;
+
+        @Override
+        public void write(int b) throws IOException {
+            if (count == buffer.length) {
+                drain();
+            }
+            buffer[count] = (byte) b;
+            count += 1;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (len > buffer.length - count) {
+                drain();
+                if (len >= buffer.length) {
+                    servlet.write(b, off, len);
+                    return;
+                }
+            }
+            System.arraycopy(b, off, buffer, count, len);
+            count += len;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            drain();
+            servlet.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
+
+        private void drain() throws IOException {
+            if (servlet == null) {
+                if (gzip) {
+                    response.header("Content-Encoding", "gzip");
+                }
+                servlet = response.raw().getOutputStream();
+            }
+            servlet.write(buffer, 0, count);
+            count = 0;
+        }
+    }
+}
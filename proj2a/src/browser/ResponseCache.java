@@ -0,0 +1,169 @@
+package browser;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded cache of serialized query responses. Entries are evicted in least
+ * recently used order once their total size exceeds a byte budget, and expire a
+ * fixed time after they are stored.
+ *
+ * Every entry records the version of the data it was computed from. Looking an
+ * entry up with a different version counts as a miss and drops the entry, so
+ * reloading the data invalidates the whole cache without touching it.
+ */
+public class ResponseCache {
+    /** Approximate bytes taken by an entry besides its key and value strings. */
+    private static final int ENTRY_OVERHEAD = 96;
+
+    private final long maxBytes;
+    private final long ttlNanos;
+    private final LinkedHashMap<NgordnetQuery, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long bytes;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    private record Entry(String response, long version, long storedAt, int bytes) {
+    }
+
+    /**
+     * Constructs a cache holding at most MAXBYTES bytes of responses, each for at most
+     * TTLMILLIS milliseconds. A MAXBYTES of 0 disables caching.
+     */
+    public ResponseCache(long maxBytes, long ttlMillis) {
+        if (maxBytes < 0 || ttlMillis <= 0) {
+            throw new IllegalArgumentException();
+        }
+        this.maxBytes = maxBytes;
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+    }
+
+    /**
+     * Returns the normal form of Q used as a cache key: the same query written with
+     * different whitespace, or with its format in another case, maps to the same key.
+     */
+    public static NgordnetQuery normalize(NgordnetQuery q) {
+        String smoothing = q.smoothing() == null ? "" : q.smoothing().trim();
+        String format = q.format() == null ? "" : q.format().trim().toLowerCase(Locale.ROOT);
+        return new NgordnetQuery(q.words().stream().map(String::trim).toList(),
+                q.startYear(), q.endYear(), q.k(), q.sumPrefixes(), smoothing, format);
+    }
+
+    /**
+     * Returns the response stored for the normalized query Q, or null if there is none,
+     * it has expired, or it was computed from a version of the data other than VERSION.
+     */
+    public String get(NgordnetQuery q, long version) {
+        synchronized (entries) {
+            Entry entry = entries.get(q);
+            if (entry != null && (entry.version != version || expired(entry))) {
+                remove(q);
+                entry = null;
+            }
+            if (entry == null) {
+                misses.incrementAndGet();
+                return null;
+            }
+            hits.incrementAndGet();
+            return entry.response;
+        }
+    }
+
+    /**
+     * Returns the response stored for the normalized query Q at VERSION like get, but
+     * without counting a hit or a miss.
+     */
+    public String peek(NgordnetQuery q, long version) {
+        synchronized (entries) {
+            Entry entry = entries.get(q);
+            return entry == null || entry.version != version || expired(entry) ? null : entry.response;
+        }
+    }
+
+    /**
+     * Stores RESPONSE for the normalized query Q, computed from version VERSION of the
+     * data, then evicts the least recently used entries until the cache fits its budget.
+     * A response larger than the whole budget is not stored.
+     */
+    public void put(NgordnetQuery q, long version, String response) {
+        int size = sizeOf(q, response);
+        if (size > maxBytes) {
+            return;
+        }
+        synchronized (entries) {
+            remove(q);
+            entries.put(q, new Entry(response, version, System.nanoTime(), size));
+            bytes += size;
+            Iterator<Map.Entry<NgordnetQuery, Entry>> eldest = entries.entrySet().iterator();
+            while (bytes > maxBytes) {
+                bytes -= eldest.next().getValue().bytes;
+                eldest.remove();
+                evictions.incrementAndGet();
+            }
+        }
+    }
+
+    /** Removes every entry. */
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+            bytes = 0;
+        }
+    }
+
+    /** Returns the number of lookups that found a response. */
+    public long hits() {
+        return hits.get();
+    }
+
+    /** Returns the number of lookups that found no usable response. */
+    public long misses() {
+        return misses.get();
+    }
+
+    /** Returns the number of entries evicted to stay within the byte budget. */
+    public long evictions() {
+        return evictions.get();
+    }
+
+    /** Returns the number of entries currently stored, including expired ones not yet dropped. */
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    /** Returns the approximate number of bytes currently stored. */
+    public long bytes() {
+        synchronized (entries) {
+            return bytes;
+        }
+    }
+
+    private boolean expired(Entry entry) {
+        return System.nanoTime() - entry.storedAt > ttlNanos;
+    }
+
+    private void remove(NgordnetQuery q) {
+        Entry removed = entries.remove(q);
+        if (removed != null) {
+            bytes -= removed.bytes;
+        }
+    }
+
+    /** Returns the approximate heap size of an entry for Q and RESPONSE. */
+    private static int sizeOf(NgordnetQuery q, String response) {
+        long size = ENTRY_OVERHEAD + 2L * response.length() + 2L * q.smoothing().length()
+                + 2L * q.format().length();
+        for (String word : q.words()) {
+            size += 40 + 2L * word.length();
+        }
+        return (int) Math.min(size, Integer.MAX_VALUE);
+    }
+}
@@ -0,0 +1,76 @@
+package browser;
+
+import org.eclipse.jetty.util.component.AbstractLifeCycle;
+import org.eclipse.jetty.util.thread.ThreadPool;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * A Jetty ThreadPool that runs every task on a new virtual thread. A request that
+ * blocks, for example while it waits for a chart from the render pool, then parks
+ * its virtual thread instead of holding one of a fixed number of platform threads,
+ * so the number of requests in progress is bounded by memory rather than by pool size.
+ *
+ * The pool is a Jetty life cycle, started and stopped with the server that uses it.
+ */
+public class VirtualThreadPool extends AbstractLifeCycle implements ThreadPool {
+    private final ThreadFactory factory = Thread.ofVirtual().name("ngordnet-", 0).factory();
+    private final Set<Thread> threads = ConcurrentHashMap.newKeySet();
+    /* Replaced on every start, so a pool that is stopped and started again can be joined again. */
+    private volatile CountDownLatch stopped = new CountDownLatch(1);
+
+    @Override
+    protected void doStart() throws Exception {
+        stopped = new CountDownLatch(1);
+        super.doStart();
+    }
+
+    @Override
+    protected void doStop() throws Exception {
+        super.doStop();
+        stopped.countDown();
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        Thread thread = factory.newThread(() -> {
+            try {
+                task.run();
+            } finally {
+                threads.remove(Thread.currentThread());
+            }
+        });
+        threads.add(thread);
+        thread.start();
+    }
+
+    /**
+     * Waits until the pool is stopped, as Jetty's ThreadPool requires, and then until the
+     * tasks still running have finished.
+     */
+    @Override
+    public void join() throws InterruptedException {
+        stopped.await();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+    }
+
+    @Override
+    public int getThreads() {
+        return threads.size();
+    }
+
+    @Override
+    public int getIdleThreads() {
+        return 0;
+    }
+
+    @Override
+    public boolean isLowOnThreads() {
+        return false;
+    }
+}
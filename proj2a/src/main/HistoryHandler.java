@@ -1,35 +1,143 @@
 package main;
 
+import browser.EndpointMetrics;
 import browser.NgordnetQuery;
 import browser.NgordnetQueryHandler;
 import ngrams.NGramMap;
-import ngrams.TimeSeries;
+import ngrams.YearSeries;
 import org.knowm.xchart.XYChart;
+import plotting.ChartCache;
+import plotting.ChartFormat;
 import plotting.Plotter;
+import plotting.RenderPool;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Supplier;
 
 public class HistoryHandler extends NgordnetQueryHandler {
+    /** Byte budget of the cache of rendered charts. */
+    public static final long DEFAULT_CHART_CACHE_BYTES = 32L << 20;
+
     private final NGramMap map;
+    private final ChartCache charts = new ChartCache(DEFAULT_CHART_CACHE_BYTES);
+    private final RenderPool renders;
 
     public HistoryHandler(NGramMap map) {
+        this(map, new RenderPool());
+    }
+
+    /**
+     * Constructs a HistoryHandler that renders PNG charts on RENDERS. When RENDERS is too
+     * busy to take another chart, the chart is sent as SVG instead, which is cheap enough
+     * to draw on the request thread.
+     */
+    public HistoryHandler(NGramMap map, RenderPool renders) {
         this.map = map;
+        this.renders = renders;
+
+        EndpointMetrics metrics = metrics();
+        metrics.counter("ngordnet_chart_cache_hits_total", "Charts served from the chart cache.", charts::hits);
+        metrics.counter("ngordnet_chart_cache_misses_total", "Charts not found in the chart cache.", charts::misses);
+        metrics.counter("ngordnet_chart_cache_evictions_total",
+                "Charts evicted to keep the chart cache within its budget.", charts::evictions);
+        metrics.gauge("ngordnet_chart_cache_bytes", "Approximate size of the chart cache.", charts::bytes);
+        metrics.counter("ngordnet_render_rejected_total",
+                "Charts sent as SVG because the render queue was full.", renders::rejected);
+        metrics.gauge("ngordnet_render_queued", "Charts waiting for a render thread.", renders::queued);
+        metrics.histogram("ngordnet_render_queue_wait_seconds", "Time charts waited for a render thread.",
+                renders.queueWait());
+        metrics.histogram("ngordnet_render_time_seconds", "Time taken to render and encode a PNG chart.",
+                renders.renderTime());
+    }
+
+    @Override
+    protected long dataVersion() {
+        return map.version();
+    }
+
+    /** Returns the cache of charts rendered by this handler, keyed by the series they plot. */
+    public ChartCache charts() {
+        return charts;
+    }
+
+    /** Returns the pool this handler renders PNG charts on. */
+    public RenderPool renders() {
+        return renders;
+    }
+
+    /** A degraded SVG response to a query for a PNG chart is not cached. */
+    @Override
+    protected boolean shouldCache(NgordnetQuery q, String response) {
+        return ChartFormat.parse(q.format()) != ChartFormat.PNG || !response.startsWith("<svg");
+    }
+
+    /**
+     * A query for points is answered with the JSON list itself, sent raw, rather than
+     * with a JSON string holding it.
+     */
+    @Override
+    protected RawResponse rawResponse(NgordnetQuery q) {
+        if (ChartFormat.parse(q.format()) != ChartFormat.POINTS) {
+            return null;
+        }
+        return new RawResponse("application/json", out -> {
+            byte[] points = handle(q).getBytes(StandardCharsets.UTF_8);
+            long start = System.nanoTime();
+            out.write(points);
+            metrics().record(EndpointMetrics.Stage.ENCODE, System.nanoTime() - start);
+        });
     }
 
+    /**
+     * Returns the chart of the weight histories of Q in the format it asks for: a
+     * Base64-encoded PNG image by default, or an SVG document or a JSON list of points.
+     * If the render pool refuses a PNG chart, the SVG document is returned instead. An
+     * unknown format throws an IllegalArgumentException.
+     */
     @Override
     public String handle(NgordnetQuery q) {
-        List<String> words = q.words();
-        int startYear = q.startYear();
-        int endYear = q.endYear();
+        ChartFormat format = ChartFormat.parse(q.format());
+        long start = System.nanoTime();
+        List<String> labels = new ArrayList<>();
+        List<YearSeries> lts = new ArrayList<>();
+        for (WeightHistories.Entry entry : WeightHistories.of(map, q)) {
+            labels.add(entry.label());
+            lts.add(entry.history());
+        }
+        metrics().record(EndpointMetrics.Stage.LOOKUP, System.nanoTime() - start);
+        if (format == ChartFormat.SVG) {
+            return renderTimed(() -> Plotter.encodeChartAsSvg(labels, lts));
+        }
+        if (format == ChartFormat.POINTS) {
+            return renderTimed(() -> Plotter.encodeChartAsPoints(labels, lts));
+        }
 
-        List<TimeSeries> lts = new ArrayList<>();
-        for (String word : words) {
-            lts.add(map.weightHistory(word, startYear, endYear));
+        ByteBuffer key = ChartCache.key(labels, lts);
+        String encodedImage = charts.get(key);
+        if (encodedImage == null) {
+            encodedImage = renders.render(() -> renderTimed(() -> {
+                XYChart chart = Plotter.generateTimeSeriesChart(labels, lts);
+                return Plotter.encodeChartAsString(chart);
+            }));
+            if (encodedImage == null) {
+                return renderTimed(() -> Plotter.encodeChartAsSvg(labels, lts));
+            }
+            charts.put(key, encodedImage);
         }
-        XYChart chart = Plotter.generateTimeSeriesChart(words, lts);
-        String encodedImage = Plotter.encodeChartAsString(chart);
 
         return encodedImage;
     }
+
+    /** Returns the chart RENDER returns, recording the time it takes as the render stage. */
+    private String renderTimed(Supplier<String> render) {
+        long start = System.nanoTime();
+        try {
+            return render.get();
+        } finally {
+            metrics().record(EndpointMetrics.Stage.RENDER, System.nanoTime() - start);
+        }
+    }
 }
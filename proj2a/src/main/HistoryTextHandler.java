@@ -1,12 +1,30 @@
 package main;
 
+import browser.EndpointMetrics;
 import browser.NgordnetQuery;
 import browser.NgordnetQueryHandler;
 import ngrams.NGramMap;
+import ngrams.Smoothing;
 
-import java.util.List;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Consumer;
 
 public class HistoryTextHandler extends NgordnetQueryHandler {
+    /**
+     * A query with at least this many histories is streamed to the client as each line is
+     * computed instead of being built, cached and serialized whole.
+     */
+    public static final int STREAM_MIN_HISTORIES = 256;
+
     private final NGramMap map;
 
     public HistoryTextHandler(NGramMap map) {
@@ -14,16 +32,113 @@ public class HistoryTextHandler extends NgordnetQueryHandler {
     }
 
     @Override
-    public String handle(NgordnetQuery q) {
-        List<String> words = q.words();
-        int startYear = q.startYear();
-        int endYear = q.endYear();
+    protected long dataVersion() {
+        return map.version();
+    }
 
-        StringBuilder response = new StringBuilder();
-        for (String word : words) {
-            String wordString = word + ": " + map.weightHistory(word, startYear, endYear).toString() + "\n";
-            response.append(wordString);
+    /**
+     * A query in the json or binary format is sent as raw bytes. Its smoothing is checked
+     * here, so a bad one fails before any bytes are sent.
+     */
+    @Override
+    protected RawResponse rawResponse(NgordnetQuery q) {
+        SeriesFormat format = SeriesFormat.parseOrText(q.format());
+        if (format.contentType() == null) {
+            return null;
         }
+        Smoothing.parse(q.smoothing());
+        return new RawResponse(format.contentType(), out -> writeRaw(q, format, out));
+    }
+
+    @Override
+    protected boolean shouldStream(NgordnetQuery q) {
+        return WeightHistories.count(map, q) >= STREAM_MIN_HISTORIES;
+    }
+
+    /**
+     * Returns the weight histories of Q as text, one line per history. Throws an
+     * IllegalArgumentException if Q asks for another format, as those are only sent raw.
+     */
+    @Override
+    public String handle(NgordnetQuery q) {
+        if (SeriesFormat.parseOrText(q.format()) != SeriesFormat.TEXT) {
+            throw new IllegalArgumentException("Format " + q.format() + " is only sent as raw bytes");
+        }
+        long start = System.nanoTime();
+        StringBuilder response = new StringBuilder();
+        WeightHistories.forEach(map, q, entry -> response.append(line(entry)));
+        metrics().record(EndpointMetrics.Stage.LOOKUP, System.nanoTime() - start);
         return response.toString();
     }
+
+    @Override
+    protected void stream(NgordnetQuery q, Writer out) throws IOException {
+        forEach(q, entry -> out.write(line(entry)));
+    }
+
+    /** Writes the weight histories of Q to OUT in FORMAT, which is json or binary. */
+    private void writeRaw(NgordnetQuery q, SeriesFormat format, OutputStream out) throws IOException {
+        if (format == SeriesFormat.JSON) {
+            JsonWriter json = new JsonWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+            json.beginArray();
+            forEach(q, entry -> SeriesFormat.writeJson(json, entry));
+            json.endArray();
+            json.flush();
+        } else {
+            DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out));
+            forEach(q, entry -> SeriesFormat.writeBinary(data, entry));
+            data.flush();
+        }
+    }
+
+    /** Writes one history. */
+    private interface EntryWriter {
+        void write(WeightHistories.Entry entry) throws IOException;
+    }
+
+    /**
+     * Passes each weight history of Q to WRITER, rethrowing the IOExceptions it throws.
+     * The time spent computing the histories is recorded as the lookup stage and the time
+     * spent in WRITER as the encode stage.
+     */
+    private void forEach(NgordnetQuery q, EntryWriter writer) throws IOException {
+        TimedWriter timed = new TimedWriter(writer);
+        try {
+            WeightHistories.forEach(map, q, timed);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        timed.lookupNanos += System.nanoTime() - timed.last;
+        metrics().record(EndpointMetrics.Stage.LOOKUP, timed.lookupNanos);
+        metrics().record(EndpointMetrics.Stage.ENCODE, timed.encodeNanos);
+    }
+
+    /** Splits the time between the histories it is passed into computing and writing them. */
+    private static class TimedWriter implements Consumer<WeightHistories.Entry> {
+        private final EntryWriter writer;
+        private long last = System.nanoTime();
+        private long lookupNanos;
+        private long encodeNanos;
+
+        TimedWriter(EntryWriter writer) {
+            this.writer = writer;
+        }
+
+        @Override
+        public void accept(WeightHistories.Entry entry) {
+            long computed = System.nanoTime();
+            lookupNanos += computed - last;
+            try {
+                writer.write(entry);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            last = System.nanoTime();
+            encodeNanos += last - computed;
+        }
+    }
+
+    private static String line(WeightHistories.Entry entry) {
+        return entry.label() + ": " + entry.history().toString() + "\n";
+    }
 }
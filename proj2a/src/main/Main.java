@@ -3,6 +3,14 @@ import static utils.Utils.*;
 import org.slf4j.LoggerFactory;
 import browser.NgordnetServer;
 import ngrams.NGramMap;
+import ngrams.NGramStore;
+import ngrams.ParallelLoader;
+import ngrams.SnapshotStore;
+import ngrams.StreamingStore;
+import ngrams.WeightMode;
+import plotting.RenderPool;
+
+import java.io.File;
 
 public class Main {
     static {
@@ -14,13 +22,40 @@ public class Main {
         NgordnetServer hns = new NgordnetServer();
 
         // The following code might be useful to you.
-        NGramMap ngm = new NGramMap(TOP_49887_WORDS_FILE, TOTAL_COUNTS_FILE);
+        /* With -Dngordnet.streamingIndex=FILE, words are read from the words file on demand
+         * through the index FILE, which is built on first use, instead of being loaded. */
+        NGramStore store;
+        String streamingIndex = System.getProperty("ngordnet.streamingIndex");
+        if (streamingIndex != null) {
+            store = StreamingStore.open(TOP_49887_WORDS_FILE, TOTAL_COUNTS_FILE, streamingIndex,
+                    Integer.getInteger("ngordnet.streamingCache", StreamingStore.DEFAULT_CACHE_SIZE));
+        } else if (new File(TOP_49887_WORDS_SNAPSHOT).exists()) {
+            /* A snapshot older than the CSV files is compiled again from them. */
+            store = SnapshotStore.open(TOP_49887_WORDS_SNAPSHOT, TOP_49887_WORDS_FILE, TOTAL_COUNTS_FILE);
+        } else {
+            store = ParallelLoader.load(TOP_49887_WORDS_FILE, TOTAL_COUNTS_FILE);
+        }
+        NGramMap ngm = new NGramMap(store, WeightMode.LAZY);
+
+        /* Charts render on their own bounded pool; when its queue is full, /history
+         * answers with SVG instead of waiting. */
+        int renderThreads = Integer.getInteger("ngordnet.renderConcurrency",
+                Runtime.getRuntime().availableProcessors());
+        RenderPool renders = new RenderPool(renderThreads,
+                Integer.getInteger("ngordnet.renderQueue", 4 * renderThreads));
 
+        if (Boolean.getBoolean("ngordnet.virtualThreads")) {
+            hns.useVirtualThreads();
+        }
         hns.startUp();
         // hns.register("history", new DummyHistoryHandler());
         // hns.register("historytext", new DummyHistoryTextHandler());
-        hns.register("history", new HistoryHandler(ngm));
+        hns.register("history", new HistoryHandler(ngm, renders));
         hns.register("historytext", new HistoryTextHandler(ngm));
+        hns.register("topwords", new TopWordsHandler(ngm));
+        hns.register("similar", new SimilarWordsHandler(ngm));
+        hns.registerBatch("batch");
+        hns.registerMetrics("metrics");
 
         System.out.println("Finished server startup! Visit http://localhost:4567/ngordnet_2a.html");
     }
@@ -0,0 +1,186 @@
+package main;
+
+import com.google.gson.stream.JsonWriter;
+import ngrams.TimeSeries;
+import ngrams.YearSeries;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * The forms a /historytext response can take, named in a query by its format:
+ *
+ *   "" or "text"   one line "word: {year=weight, ...}" per history, as a JSON string
+ *   "json"         a JSON array [{"label": ..., "years": [...], "values": [...]}, ...]
+ *   "binary"       the histories one after another until the end of the body, each as
+ *                  varint  length of the label in bytes, then the label in UTF-8
+ *                  varint  number of points N
+ *                  N varints: the first year zigzag-encoded, then each year's
+ *                          increase over the one before
+ *                  N float64 big-endian values
+ *
+ * Varints are unsigned LEB128: seven bits per byte, least significant first, with the
+ * high bit set on every byte but the last. Years are consecutive in most histories, so
+ * each takes one byte.
+ */
+public enum SeriesFormat {
+    TEXT(null),
+    JSON("application/json"),
+    BINARY("application/x-ngordnet-series");
+
+    private final String contentType;
+
+    SeriesFormat(String contentType) {
+        this.contentType = contentType;
+    }
+
+    /** Returns the content type of a response in this format, or null for a JSON string. */
+    public String contentType() {
+        return contentType;
+    }
+
+    /**
+     * Returns the SeriesFormat named by SPEC, ignoring case. A null or blank SPEC means
+     * TEXT. Throws an IllegalArgumentException for any other SPEC than those listed above.
+     */
+    public static SeriesFormat parse(String spec) {
+        if (spec == null || spec.isBlank()) {
+            return TEXT;
+        }
+        return switch (spec.trim().toLowerCase(Locale.ROOT)) {
+            case "text" -> TEXT;
+            case "json" -> JSON;
+            case "binary" -> BINARY;
+            default -> throw new IllegalArgumentException("Unknown series format: " + spec);
+        };
+    }
+
+    /**
+     * Returns the SeriesFormat named by SPEC as parse does, but TEXT for any SPEC that
+     * names no SeriesFormat, such as a chart format sent along by a page that shares its
+     * query parameters between endpoints.
+     */
+    public static SeriesFormat parseOrText(String spec) {
+        if (spec == null) {
+            return TEXT;
+        }
+        return switch (spec.trim().toLowerCase(Locale.ROOT)) {
+            case "json" -> JSON;
+            case "binary" -> BINARY;
+            default -> TEXT;
+        };
+    }
+
+    /**
+     * Writes ENTRY to JSON as one element of the array of the json format. A value that is
+     * not finite is written as null.
+     */
+    public static void writeJson(JsonWriter json, WeightHistories.Entry entry) throws IOException {
+        YearSeries history = entry.history();
+        json.beginObject();
+        json.name("label").value(entry.label());
+        json.name("years").beginArray();
+        for (int year : history.years()) {
+            json.value(year);
+        }
+        json.endArray();
+        json.name("values").beginArray();
+        for (double value : history.data()) {
+            if (Double.isFinite(value)) {
+                json.value(value);
+            } else {
+                json.nullValue();
+            }
+        }
+        json.endArray();
+        json.endObject();
+    }
+
+    /** Writes ENTRY to OUT in the binary format. */
+    public static void writeBinary(DataOutputStream out, WeightHistories.Entry entry) throws IOException {
+        byte[] label = entry.label().getBytes(StandardCharsets.UTF_8);
+        List<Integer> years = entry.history().years();
+        List<Double> data = entry.history().data();
+        writeVarint(out, label.length);
+        out.write(label);
+        writeVarint(out, years.size());
+        int previous = 0;
+        for (int i = 0; i < years.size(); i += 1) {
+            int year = years.get(i);
+            if (i == 0) {
+                writeVarint(out, (year << 1) ^ (year >> 31));
+            } else {
+                writeVarint(out, year - previous);
+            }
+            previous = year;
+        }
+        for (double value : data) {
+            out.writeDouble(value);
+        }
+    }
+
+    /**
+     * Returns the histories read from IN, which holds a body in the binary format, until
+     * its end. Throws an IOException if IN ends in the middle of a history.
+     */
+    public static List<WeightHistories.Entry> readBinary(InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(in);
+        List<WeightHistories.Entry> histories = new ArrayList<>();
+        while (true) {
+            int first = data.read();
+            if (first < 0) {
+                return histories;
+            }
+            byte[] label = new byte[readVarint(data, first)];
+            data.readFully(label);
+            int n = readVarint(data, data.read());
+            int[] years = new int[n];
+            for (int i = 0; i < n; i += 1) {
+                int v = readVarint(data, data.read());
+                years[i] = i == 0 ? (v >>> 1) ^ -(v & 1) : years[i - 1] + v;
+            }
+            TimeSeries history = new TimeSeries();
+            for (int i = 0; i < n; i += 1) {
+                history.put(years[i], data.readDouble());
+            }
+            histories.add(new WeightHistories.Entry(new String(label, StandardCharsets.UTF_8), history));
+        }
+    }
+
+    private static void writeVarint(OutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    /** Returns the varint whose first byte, already read, is FIRST and the rest are in IN. */
+    private static int readVarint(InputStream in, int first) throws IOException {
+        int value = 0;
+        int shift = 0;
+        int b = first;
+        while (true) {
+            if (b < 0) {
+                throw new EOFException("Body ends inside a varint");
+            }
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+            shift += 7;
+            if (shift > 28) {
+                throw new IOException("Varint longer than five bytes");
+            }
+            b = in.read();
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package main;
+
+import browser.EndpointMetrics;
+import browser.NgordnetQuery;
+import browser.NgordnetQueryHandler;
+import ngrams.NGramMap;
+
+import java.util.Map;
+
+public class SimilarWordsHandler extends NgordnetQueryHandler {
+    /** Number of words returned per query word when the query does not set k. */
+    public static final int DEFAULT_K = 10;
+    /** Largest number of words returned per query word, whatever k the query sets. */
+    public static final int MAX_K = 1000;
+
+    private final NGramMap map;
+
+    public SimilarWordsHandler(NGramMap map) {
+        this.map = map;
+    }
+
+    @Override
+    protected long dataVersion() {
+        return map.version();
+    }
+
+    /**
+     * Lists, for every word of Q, the k words whose weight history between the start
+     * and end year of Q correlates best with its own, as one
+     * "word: {match=correlation, ...}" line per query word, best match first.
+     */
+    @Override
+    public String handle(NgordnetQuery q) {
+        int k = q.k() > 0 ? Math.min(q.k(), MAX_K) : DEFAULT_K;
+        NGramMap data = map.snapshot();
+
+        StringBuilder response = new StringBuilder();
+        long lookupNanos = 0;
+        for (String word : q.words()) {
+            long start = System.nanoTime();
+            Map<String, Double> similar = data.similarWords(word, q.startYear(), q.endYear(), k);
+            lookupNanos += System.nanoTime() - start;
+            response.append(word).append(": ").append(similar).append("\n");
+        }
+        metrics().record(EndpointMetrics.Stage.LOOKUP, lookupNanos);
+        return response.toString();
+    }
+}
@@ -0,0 +1,43 @@
+package main;
+
+import browser.EndpointMetrics;
+import browser.NgordnetQuery;
+import browser.NgordnetQueryHandler;
+import ngrams.NGramMap;
+
+import java.util.Map;
+
+public class TopWordsHandler extends NgordnetQueryHandler {
+    /** Number of words returned when the query does not set k. */
+    public static final int DEFAULT_K = 10;
+
+    private final NGramMap map;
+
+    public TopWordsHandler(NGramMap map) {
+        this.map = map;
+    }
+
+    @Override
+    protected long dataVersion() {
+        return map.version();
+    }
+
+    /**
+     * Lists the k most frequent words between the start and end year of Q, one
+     * "word: total count" line per word, most frequent first.
+     */
+    @Override
+    public String handle(NgordnetQuery q) {
+        int k = q.k() > 0 ? q.k() : DEFAULT_K;
+
+        long start = System.nanoTime();
+        Map<String, Double> top = map.topWords(q.startYear(), q.endYear(), k);
+        metrics().record(EndpointMetrics.Stage.LOOKUP, System.nanoTime() - start);
+
+        StringBuilder response = new StringBuilder();
+        for (Map.Entry<String, Double> entry : top.entrySet()) {
+            response.append(entry.getKey()).append(": ").append(entry.getValue()).append("\n");
+        }
+        return response.toString();
+    }
+}
@@ -0,0 +1,107 @@
+package main;
+
+import browser.NgordnetQuery;
+import ngrams.NGramMap;
+import ngrams.Smoothing;
+import ngrams.TimeSeries;
+import ngrams.TimeSeriesView;
+import ngrams.YearSeries;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Resolves the words of a query into the weight histories to display, expanding
+ * prefix patterns such as "histor*".
+ */
+public class WeightHistories {
+    /** A prefix pattern expands to at most this many separate histories. */
+    public static final int MAX_PREFIX_MATCHES = 1000;
+
+    /** The weight history of one word or pattern, with the label to display. */
+    public record Entry(String label, YearSeries history) {
+    }
+
+    /**
+     * Returns the weight history of every word of Q between its start and end year,
+     * in the order of the query. A pattern ending in
+     * '*' is replaced by each word it matches, or by a single summed history labeled
+     * with the pattern if Q asks to sum prefixes. All histories are read from one
+     * snapshot of MAP, so they never mix data from before and after an append. If Q
+     * asks for smoothing, every history is smoothed; a malformed smoothing spec throws
+     * an IllegalArgumentException.
+     */
+    public static List<Entry> of(NGramMap map, NgordnetQuery q) {
+        List<Entry> histories = new ArrayList<>();
+        forEach(map, q, histories::add);
+        return histories;
+    }
+
+    /**
+     * Passes the histories returned by of(MAP, Q) to ACTION one at a time, in the same
+     * order, without holding them all at once. A malformed smoothing spec throws an
+     * IllegalArgumentException before ACTION is called.
+     */
+    public static void forEach(NGramMap map, NgordnetQuery q, Consumer<Entry> action) {
+        Smoothing smoothing = Smoothing.parse(q.smoothing());
+        NGramMap data = map.snapshot();
+        int startYear = q.startYear();
+        int endYear = q.endYear();
+        for (String word : q.words()) {
+            if (!word.endsWith("*")) {
+                action.accept(smooth(smoothing, new Entry(word,
+                        data.weightView(data.wordId(word), startYear, endYear))));
+                continue;
+            }
+            String prefix = word.substring(0, word.length() - 1);
+            if (q.sumPrefixes()) {
+                action.accept(smooth(smoothing, new Entry(word,
+                        data.summedPrefixWeightHistory(prefix, startYear, endYear))));
+                continue;
+            }
+            int[] matches = data.wordIdsWithPrefix(prefix);
+            for (int i = 0; i < Math.min(matches.length, MAX_PREFIX_MATCHES); i += 1) {
+                action.accept(smooth(smoothing, new Entry(data.word(matches[i]),
+                        data.weightView(matches[i], startYear, endYear))));
+            }
+        }
+    }
+
+    /** Returns the number of histories of(MAP, Q) returns, without computing any of them. */
+    public static int count(NGramMap map, NgordnetQuery q) {
+        int count = 0;
+        for (String word : q.words()) {
+            if (!word.endsWith("*") || q.sumPrefixes()) {
+                count += 1;
+            } else {
+                String prefix = word.substring(0, word.length() - 1);
+                count += Math.min(map.wordIdsWithPrefix(prefix).length, MAX_PREFIX_MATCHES);
+            }
+        }
+        return count;
+    }
+
+    private static Entry smooth(Smoothing smoothing, Entry entry) {
+        if (smoothing.kind() == Smoothing.Kind.NONE) {
+            return entry;
+        }
+        return new Entry(entry.label(), smoothing.apply(toTimeSeries(entry.history())));
+    }
+
+    private static TimeSeries toTimeSeries(YearSeries history) {
+        if (history instanceof TimeSeries ts) {
+            return ts;
+        }
+        if (history instanceof TimeSeriesView view) {
+            return view.toTimeSeries();
+        }
+        TimeSeries ts = new TimeSeries();
+        List<Integer> years = history.years();
+        List<Double> data = history.data();
+        for (int i = 0; i < years.size(); i += 1) {
+            ts.put(years.get(i), data.get(i));
+        }
+        return ts;
+    }
+}
@@ -0,0 +1,313 @@
+package ngrams;
+
+import edu.princeton.cs.algs4.In;
+
+import java.nio.DoubleBuffer;
+import java.util.Arrays;
+
+import static ngrams.TimeSeries.MAX_YEAR;
+import static ngrams.TimeSeries.MIN_YEAR;
+
+/**
+ * An NGramStore that keeps every word's counts in a primitive double[] column,
+ * indexed by year starting at the first year the word appears in. Compared to a
+ * TimeSeries per word this avoids one boxed Integer, one boxed Double and one tree
+ * node per (word, year) entry.
+ *
+ * Words are interned in a Vocabulary, and the row of a word is its id there.
+ */
+public class ColumnarStore implements NGramStore {
+    private static final int NUM_YEARS = MAX_YEAR - MIN_YEAR + 1;
+
+    private final Vocabulary vocabulary;
+    private final int[] firstYears;
+    private final double[][] columns;
+    private final double[] totals;
+
+    private ColumnarStore(Vocabulary vocabulary, int[] firstYears, double[][] columns,
+                          double[] totals) {
+        this.vocabulary = vocabulary;
+        this.firstYears = firstYears;
+        this.columns = columns;
+        this.totals = totals;
+    }
+
+    /**
+     * Reads WORDSFILENAME and COUNTSFILENAME into a new ColumnarStore.
+     */
+    public static ColumnarStore fromFiles(String wordsFilename, String countsFilename) {
+        Builder builder = new Builder();
+
+        In wordsFileReader = new In(wordsFilename);
+        while (wordsFileReader.hasNextLine()) {
+            String line = wordsFileReader.readLine();
+            String[] splitLine = line.split("\t");
+            builder.add(splitLine[0], Integer.parseInt(splitLine[1]),
+                    Double.parseDouble(splitLine[2]));
+        }
+        wordsFileReader.close();
+
+        readCountsFile(countsFilename, builder);
+        return builder.build();
+    }
+
+    /**
+     * Adds the total counts from COUNTSFILENAME to BUILDER.
+     */
+    static void readCountsFile(String countsFilename, Builder builder) {
+        In countsFileReader = new In(countsFilename);
+        while (countsFileReader.hasNextLine()) {
+            String line = countsFileReader.readLine();
+            String[] splitLine = line.split(",");
+            builder.addTotal(Integer.parseInt(splitLine[0]), Double.parseDouble(splitLine[1]));
+        }
+        countsFileReader.close();
+    }
+
+    /**
+     * Returns a new ColumnarStore holding the entries of BASE overlaid with the entries
+     * of DELTA. Entries of DELTA replace entries of BASE for the same word and year, and
+     * total counts of DELTA replace those of BASE for the same year. Words keep their
+     * rows, and words new in DELTA get the rows after them.
+     *
+     * BASE is not modified. If BASE is a ColumnarStore, the new store shares the column
+     * of every word that DELTA does not touch, so the cost of a merge is proportional to
+     * the number of words in BASE plus the size of DELTA, not to the size of BASE's data.
+     * Any other store is copied into memory.
+     */
+    public static ColumnarStore merge(NGramStore base, Builder delta) {
+        int baseSize = base.size();
+        Vocabulary vocabulary;
+        int[] firstYears = new int[baseSize + delta.vocabulary.size()];
+        double[][] columns = new double[firstYears.length][];
+        double[] totals = new double[NUM_YEARS];
+        if (base instanceof ColumnarStore columnar) {
+            vocabulary = columnar.vocabulary.compact();
+            System.arraycopy(columnar.firstYears, 0, firstYears, 0, baseSize);
+            System.arraycopy(columnar.columns, 0, columns, 0, baseSize);
+            System.arraycopy(columnar.totals, 0, totals, 0, NUM_YEARS);
+        } else {
+            vocabulary = new Vocabulary();
+            for (int row = 0; row < baseSize; row += 1) {
+                vocabulary.add(base.word(row));
+                firstYears[row] = base.firstYear(row);
+                DoubleBuffer column = base.column(row);
+                columns[row] = new double[column.limit()];
+                column.get(0, columns[row]);
+            }
+            base.totals().get(0, totals);
+        }
+
+        for (int deltaRow = 0; deltaRow < delta.vocabulary.size(); deltaRow += 1) {
+            int row = vocabulary.add(delta.vocabulary, deltaRow);
+            double[] deltaColumn = delta.columns[deltaRow];
+            int deltaFirstYear = delta.firstYears[deltaRow];
+            int deltaLength = delta.lengths[deltaRow];
+            if (deltaLength == 0) {
+                if (row >= baseSize) {
+                    columns[row] = new double[0];
+                }
+                continue;
+            }
+            if (row >= baseSize) {
+                firstYears[row] = deltaFirstYear;
+                columns[row] = Arrays.copyOf(deltaColumn, deltaLength);
+                continue;
+            }
+
+            double[] column = columns[row];
+            int firstYear = column.length == 0 ? deltaFirstYear : Math.min(firstYears[row], deltaFirstYear);
+            int lastYear = column.length == 0 ? deltaFirstYear + deltaLength - 1
+                    : Math.max(firstYears[row] + column.length, deltaFirstYear + deltaLength) - 1;
+            double[] merged = Builder.emptyColumn(lastYear - firstYear + 1);
+            if (column.length > 0) {
+                System.arraycopy(column, 0, merged, firstYears[row] - firstYear, column.length);
+            }
+            for (int i = 0; i < deltaLength; i += 1) {
+                if (!Double.isNaN(deltaColumn[i])) {
+                    merged[deltaFirstYear - firstYear + i] = deltaColumn[i];
+                }
+            }
+            firstYears[row] = firstYear;
+            columns[row] = merged;
+        }
+
+        for (int i = 0; i < NUM_YEARS; i += 1) {
+            if (!Double.isNaN(delta.totals[i])) {
+                totals[i] = delta.totals[i];
+            }
+        }
+
+        int size = vocabulary.size();
+        return new ColumnarStore(vocabulary.compact(), Arrays.copyOf(firstYears, size),
+                Arrays.copyOf(columns, size), totals);
+    }
+
+    @Override
+    public int size() {
+        return vocabulary.size();
+    }
+
+    @Override
+    public int row(String word) {
+        return vocabulary.id(word);
+    }
+
+    @Override
+    public String word(int row) {
+        return vocabulary.word(row);
+    }
+
+    @Override
+    public int firstYear(int row) {
+        return firstYears[row];
+    }
+
+    @Override
+    public DoubleBuffer column(int row) {
+        return DoubleBuffer.wrap(columns[row]).asReadOnlyBuffer();
+    }
+
+    @Override
+    public DoubleBuffer totals() {
+        return DoubleBuffer.wrap(totals).asReadOnlyBuffer();
+    }
+
+    /**
+     * Accumulates (word, year, count) entries in growable primitive columns and
+     * packs them into a ColumnarStore. Entries may arrive in any order; adding the
+     * same (word, year) twice keeps the last count.
+     */
+    public static class Builder {
+        private final Vocabulary vocabulary = new Vocabulary();
+        private int[] firstYears = new int[16];
+        private int[] lengths = new int[16];
+        private double[][] columns = new double[16][];
+        private final double[] totals = emptyColumn(NUM_YEARS);
+
+        /** Records COUNT as the number of occurrences of WORD in YEAR. */
+        public void add(String word, int year, double count) {
+            add(row(word), year, count);
+        }
+
+        /**
+         * Returns the row of WORD in this builder, adding an empty row if the word
+         * has not been seen yet.
+         */
+        public int row(String word) {
+            return ensureRow(vocabulary.add(word));
+        }
+
+        /**
+         * Returns the row of the word whose UTF-8 encoding is BYTES[FROM] to
+         * BYTES[TO - 1], adding an empty row if the word has not been seen yet.
+         */
+        public int row(byte[] bytes, int from, int to) {
+            return ensureRow(vocabulary.add(bytes, from, to));
+        }
+
+        /** Records COUNT as the number of occurrences of the word at ROW in YEAR. */
+        public void add(int row, int year, double count) {
+            int index = ensureYear(row, year);
+            columns[row][index] = count;
+        }
+
+        /**
+         * Adds every entry of OTHER to this builder. Entries of OTHER replace
+         * entries of this builder for the same word and year.
+         */
+        public void addAll(Builder other) {
+            for (int otherRow = 0; otherRow < other.vocabulary.size(); otherRow += 1) {
+                int row = ensureRow(vocabulary.add(other.vocabulary, otherRow));
+                double[] column = other.columns[otherRow];
+                int firstYear = other.firstYears[otherRow];
+                for (int i = 0; i < other.lengths[otherRow]; i += 1) {
+                    if (!Double.isNaN(column[i])) {
+                        add(row, firstYear + i, column[i]);
+                    }
+                }
+            }
+            for (int i = 0; i < NUM_YEARS; i += 1) {
+                if (!Double.isNaN(other.totals[i])) {
+                    totals[i] = other.totals[i];
+                }
+            }
+        }
+
+        /** Records COUNT as the total number of words recorded in YEAR. */
+        public void addTotal(int year, double count) {
+            if (year < MIN_YEAR || year > MAX_YEAR) {
+                throw new IllegalArgumentException("Year out of range: " + year);
+            }
+            totals[year - MIN_YEAR] = count;
+        }
+
+        /** Returns a ColumnarStore holding every entry added so far. */
+        public ColumnarStore build() {
+            int size = vocabulary.size();
+            int[] packedFirstYears = Arrays.copyOf(firstYears, size);
+            double[][] packedColumns = new double[size][];
+            for (int row = 0; row < size; row += 1) {
+                packedColumns[row] = Arrays.copyOf(columns[row], lengths[row]);
+            }
+            return new ColumnarStore(vocabulary.compact(), packedFirstYears, packedColumns,
+                    totals.clone());
+        }
+
+        /**
+         * Returns ROW, which is a vocabulary id, after adding an empty row for it if
+         * the id is new.
+         */
+        private int ensureRow(int row) {
+            if (row < columns.length && columns[row] != null) {
+                return row;
+            }
+            if (row == columns.length) {
+                int capacity = row * 2;
+                firstYears = Arrays.copyOf(firstYears, capacity);
+                lengths = Arrays.copyOf(lengths, capacity);
+                columns = Arrays.copyOf(columns, capacity);
+            }
+            lengths[row] = 0;
+            columns[row] = emptyColumn(8);
+            return row;
+        }
+
+        /**
+         * Grows the column of ROW so that it covers YEAR, and returns the index of
+         * YEAR inside the column.
+         */
+        private int ensureYear(int row, int year) {
+            double[] column = columns[row];
+            int firstYear = firstYears[row];
+            if (lengths[row] == 0) {
+                firstYears[row] = year;
+                lengths[row] = 1;
+                return 0;
+            }
+            if (year < firstYear) {
+                int shift = firstYear - year;
+                double[] grown = emptyColumn(Math.max(column.length, lengths[row] + shift));
+                System.arraycopy(column, 0, grown, shift, lengths[row]);
+                columns[row] = grown;
+                firstYears[row] = year;
+                lengths[row] += shift;
+                return 0;
+            }
+            int index = year - firstYear;
+            if (index >= column.length) {
+                double[] grown = emptyColumn(Math.max(column.length * 2, index + 1));
+                System.arraycopy(column, 0, grown, 0, lengths[row]);
+                columns[row] = grown;
+            }
+            lengths[row] = Math.max(lengths[row], index + 1);
+            return index;
+        }
+
+        private static double[] emptyColumn(int length) {
+            double[] column = new double[length];
+            Arrays.fill(column, Double.NaN);
+            return column;
+        }
+    }
+}
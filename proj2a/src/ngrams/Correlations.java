@@ -0,0 +1,202 @@
+package ngrams;
+
+import java.nio.DoubleBuffer;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import static ngrams.TimeSeries.MAX_YEAR;
+import static ngrams.TimeSeries.MIN_YEAR;
+
+/**
+ * Finds the words whose relative frequency over a range of years has the highest
+ * Pearson correlation with that of a given word. A year in which a word does not
+ * appear counts as a frequency of 0.
+ *
+ * The history of the given word is centered and scaled to unit length once per
+ * query. The correlation of another word is then its dot product with that vector
+ * divided by its own standard deviation, and all three sums involved are collected
+ * in one pass over its count column; counts are turned into frequencies inside
+ * that pass by multiplying with the inverse total count of each year. Words are
+ * scanned in blocks of BLOCK_ROWS rows on a ForkJoinPool, each block keeping its own
+ * top K, and words without any count in the range are skipped without a scan.
+ */
+class Correlations {
+    /** Number of rows scanned by one task. */
+    static final int BLOCK_ROWS = 2048;
+
+    /** Relative variance below which a frequency counts as constant. */
+    private static final double CONSTANT_TOLERANCE = 1E-12;
+
+    private static final Comparator<TopWords.Scored> BY_SCORE =
+            Comparator.comparingDouble(TopWords.Scored::score)
+                    .thenComparing(TopWords.Scored::row, Comparator.reverseOrder());
+
+    private Correlations() {
+    }
+
+    /**
+     * Returns the K rows of STORE other than ROW whose frequency between STARTYEAR and
+     * ENDYEAR correlates best with that of ROW, best first, scored by their correlation.
+     * Returns an empty list if the range holds fewer than two years or if the frequency of
+     * ROW is constant over it.
+     */
+    static List<TopWords.Scored> mostCorrelated(NGramStore store, int row, int startYear, int endYear,
+                                                int k, ForkJoinPool pool) {
+        int start = Math.max(startYear, MIN_YEAR);
+        int end = Math.min(endYear, MAX_YEAR);
+        int n = end - start + 1;
+        /* No more than every other word can match, whatever K the caller asked for. */
+        k = Math.min(k, store.size() - 1);
+        if (n < 2 || k <= 0) {
+            return new ArrayList<>();
+        }
+
+        DoubleBuffer totals = store.totals();
+        double[] inverseTotals = new double[n];
+        for (int i = 0; i < n; i += 1) {
+            double total = totals.get(start + i - MIN_YEAR);
+            inverseTotals[i] = total > 0 ? 1 / total : 0;
+        }
+
+        double[] query = new double[n];
+        addFrequencies(store, row, start, end, inverseTotals, query);
+        double mean = 0;
+        for (double x : query) {
+            mean += x;
+        }
+        mean /= n;
+        double norm = 0;
+        for (int i = 0; i < n; i += 1) {
+            query[i] -= mean;
+            norm += query[i] * query[i];
+        }
+        if (!(norm > 0) || norm <= CONSTANT_TOLERANCE * mean * mean * n) {
+            return new ArrayList<>();
+        }
+        norm = Math.sqrt(norm);
+        for (int i = 0; i < n; i += 1) {
+            query[i] /= norm;
+        }
+
+        ScanTask task = new ScanTask(store, row, start, end, inverseTotals, query, k, 0, store.size());
+        PriorityQueue<TopWords.Scored> top = store.size() > BLOCK_ROWS ? pool.invoke(task) : task.compute();
+        List<TopWords.Scored> result = new ArrayList<>(top);
+        result.sort(BY_SCORE.reversed());
+        return result;
+    }
+
+    /** Adds the frequencies of ROW between START and END to FREQUENCIES, indexed from START. */
+    private static void addFrequencies(NGramStore store, int row, int start, int end,
+                                       double[] inverseTotals, double[] frequencies) {
+        DoubleBuffer column = store.column(row);
+        int firstYear = store.firstYear(row);
+        int from = Math.max(start, firstYear);
+        int to = Math.min(end, firstYear + column.limit() - 1);
+        for (int year = from; year <= to; year += 1) {
+            double count = column.get(year - firstYear);
+            if (!Double.isNaN(count)) {
+                frequencies[year - start] += count * inverseTotals[year - start];
+            }
+        }
+    }
+
+    /**
+     * Scores the rows FROM (inclusive) to TO (exclusive) and returns the best K of them in
+     * a min-heap. Ranges longer than BLOCK_ROWS are split in half and scanned in parallel.
+     */
+    private static class ScanTask extends RecursiveTask<PriorityQueue<TopWords.Scored>> {
+        private final NGramStore store;
+        private final int queryRow;
+        private final int start;
+        private final int end;
+        private final double[] inverseTotals;
+        private final double[] query;
+        private final int k;
+        private final int from;
+        private final int to;
+
+        ScanTask(NGramStore store, int queryRow, int start, int end, double[] inverseTotals,
+                 double[] query, int k, int from, int to) {
+            this.store = store;
+            this.queryRow = queryRow;
+            this.start = start;
+            this.end = end;
+            this.inverseTotals = inverseTotals;
+            this.query = query;
+            this.k = k;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected PriorityQueue<TopWords.Scored> compute() {
+            if (to - from <= BLOCK_ROWS) {
+                PriorityQueue<TopWords.Scored> top = new PriorityQueue<>(Math.min(k, to - from) + 1, BY_SCORE);
+                for (int row = from; row < to; row += 1) {
+                    if (row != queryRow) {
+                        offer(top, row, correlation(row));
+                    }
+                }
+                return top;
+            }
+            int mid = (from + to) >>> 1;
+            ScanTask right = new ScanTask(store, queryRow, start, end, inverseTotals, query, k, mid, to);
+            right.fork();
+            PriorityQueue<TopWords.Scored> top = new ScanTask(store, queryRow, start, end, inverseTotals,
+                    query, k, from, mid).compute();
+            for (TopWords.Scored scored : right.join()) {
+                offer(top, scored.row(), scored.score());
+            }
+            return top;
+        }
+
+        private void offer(PriorityQueue<TopWords.Scored> top, int row, double score) {
+            if (Double.isNaN(score)) {
+                return;
+            }
+            TopWords.Scored scored = new TopWords.Scored(row, score);
+            if (top.size() < k) {
+                top.add(scored);
+            } else if (BY_SCORE.compare(scored, top.peek()) > 0) {
+                top.poll();
+                top.add(scored);
+            }
+        }
+
+        /**
+         * Returns the correlation of ROW with the query, or NaN if ROW has no data in the
+         * range or a constant frequency over it.
+         */
+        private double correlation(int row) {
+            DoubleBuffer column = store.column(row);
+            int firstYear = store.firstYear(row);
+            int from = Math.max(start, firstYear);
+            int to = Math.min(end, firstYear + column.limit() - 1);
+            if (from > to) {
+                return Double.NaN;
+            }
+            double sum = 0;
+            double sumOfSquares = 0;
+            double dot = 0;
+            for (int year = from; year <= to; year += 1) {
+                double count = column.get(year - firstYear);
+                if (!Double.isNaN(count)) {
+                    double x = count * inverseTotals[year - start];
+                    sum += x;
+                    sumOfSquares += x * x;
+                    dot += x * query[year - start];
+                }
+            }
+            /* The subtraction cancels for a constant frequency, leaving only rounding error. */
+            double variance = sumOfSquares - sum * sum / query.length;
+            if (!(variance > sumOfSquares * CONSTANT_TOLERANCE)) {
+                return Double.NaN;
+            }
+            return Math.max(-1, Math.min(1, dot / Math.sqrt(variance)));
+        }
+    }
+}
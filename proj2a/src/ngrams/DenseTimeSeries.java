@@ -0,0 +1,275 @@
+package ngrams;
+
+import java.nio.DoubleBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static ngrams.TimeSeries.MAX_YEAR;
+import static ngrams.TimeSeries.MIN_YEAR;
+
+/**
+ * A time series backed by a dense array with one slot per year between MIN_YEAR
+ * and MAX_YEAR, plus a bitmap recording which years hold data. It offers the same
+ * queries as TimeSeries (years(), data(), plus, dividedBy), but arithmetic runs as
+ * straight loops over primitive arrays instead of walking trees of boxed values,
+ * and the in-place variants let a caller fold many series into one accumulator
+ * without allocating.
+ *
+ * The slot of a year without data always holds 0.
+ */
+public class DenseTimeSeries implements YearSeries {
+    private static final int NUM_YEARS = MAX_YEAR - MIN_YEAR + 1;
+    private static final int NUM_WORDS = (NUM_YEARS + 63) / 64;
+
+    private final double[] values;
+    private final long[] present;
+
+    /**
+     * Constructs a new empty DenseTimeSeries.
+     */
+    public DenseTimeSeries() {
+        values = new double[NUM_YEARS];
+        present = new long[NUM_WORDS];
+    }
+
+    /**
+     * Creates a DenseTimeSeries holding the same data as TS.
+     */
+    public DenseTimeSeries(TimeSeries ts) {
+        this();
+        if (ts == null) {
+            throw new IllegalArgumentException();
+        }
+        for (Map.Entry<Integer, Double> entry : ts.entrySet()) {
+            put(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * Returns true if this series holds data for YEAR.
+     */
+    public boolean containsYear(int year) {
+        if (year < MIN_YEAR || year > MAX_YEAR) {
+            return false;
+        }
+        int i = year - MIN_YEAR;
+        return (present[i >>> 6] & (1L << i)) != 0;
+    }
+
+    /**
+     * Returns the data for YEAR, or 0 if this series holds no data for YEAR.
+     */
+    public double get(int year) {
+        return containsYear(year) ? values[year - MIN_YEAR] : 0;
+    }
+
+    /**
+     * Sets the data for YEAR to VALUE.
+     */
+    public void put(int year, double value) {
+        checkYear(year);
+        int i = year - MIN_YEAR;
+        values[i] = value;
+        present[i >>> 6] |= 1L << i;
+    }
+
+    /**
+     * Returns the number of years holding data.
+     */
+    public int size() {
+        int size = 0;
+        for (long word : present) {
+            size += Long.bitCount(word);
+        }
+        return size;
+    }
+
+    /**
+     * Returns true if no year holds data.
+     */
+    public boolean isEmpty() {
+        for (long word : present) {
+            if (word != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns all years for this time series in ascending order.
+     */
+    @Override
+    public List<Integer> years() {
+        List<Integer> years = new ArrayList<>();
+        for (int i = nextPresent(0); i >= 0; i = nextPresent(i + 1)) {
+            years.add(MIN_YEAR + i);
+        }
+        return years;
+    }
+
+    /**
+     * Returns all data for this time series, in the order of years().
+     */
+    @Override
+    public List<Double> data() {
+        List<Double> data = new ArrayList<>();
+        for (int i = nextPresent(0); i >= 0; i = nextPresent(i + 1)) {
+            data.add(values[i]);
+        }
+        return data;
+    }
+
+    /**
+     * Returns the year-wise sum of this series and TS as a new DenseTimeSeries. A
+     * year present in only one of them keeps the value of that one.
+     */
+    public DenseTimeSeries plus(DenseTimeSeries ts) {
+        if (ts == null) {
+            throw new IllegalArgumentException();
+        }
+        DenseTimeSeries sum = copy();
+        sum.add(ts);
+        return sum;
+    }
+
+    /**
+     * Returns the quotient of each year of this series divided by the same year of
+     * TS as a new DenseTimeSeries. Throws an IllegalArgumentException if TS is
+     * missing a year that this series holds; years only in TS are ignored.
+     */
+    public DenseTimeSeries dividedBy(DenseTimeSeries ts) {
+        if (ts == null) {
+            throw new IllegalArgumentException();
+        }
+        DenseTimeSeries quotient = copy();
+        quotient.divideBy(ts);
+        return quotient;
+    }
+
+    /**
+     * Adds TS to this series in place.
+     */
+    public void add(DenseTimeSeries ts) {
+        for (int i = 0; i < NUM_YEARS; i += 1) {
+            values[i] += ts.values[i];
+        }
+        for (int w = 0; w < NUM_WORDS; w += 1) {
+            present[w] |= ts.present[w];
+        }
+    }
+
+    /**
+     * Divides this series by TS in place. Throws an IllegalArgumentException, leaving
+     * this series unchanged, if TS is missing a year that this series holds.
+     */
+    public void divideBy(DenseTimeSeries ts) {
+        for (int w = 0; w < NUM_WORDS; w += 1) {
+            if ((present[w] & ~ts.present[w]) != 0) {
+                throw new IllegalArgumentException();
+            }
+        }
+        for (int i = 0; i < NUM_YEARS; i += 1) {
+            double quotient = values[i] / ts.values[i];
+            values[i] = (present[i >>> 6] & (1L << i)) != 0 ? quotient : 0;
+        }
+    }
+
+    /**
+     * Adds the entries of COLUMN between STARTYEAR and ENDYEAR inclusive to this
+     * series in place. Index 0 of COLUMN holds the value for FIRSTYEAR, and NaN
+     * entries mark years without data, as in NGramStore.column.
+     */
+    public void addColumn(DoubleBuffer column, int firstYear, int startYear, int endYear) {
+        int from = Math.max(Math.max(startYear, firstYear), MIN_YEAR);
+        int to = Math.min(Math.min(endYear, firstYear + column.limit() - 1), MAX_YEAR);
+        for (int year = from; year <= to; year += 1) {
+            double value = column.get(year - firstYear);
+            if (!Double.isNaN(value)) {
+                int i = year - MIN_YEAR;
+                values[i] += value;
+                present[i >>> 6] |= 1L << i;
+            }
+        }
+    }
+
+    /**
+     * Divides this series in place by COLUMN, whose index 0 holds the value for
+     * FIRSTYEAR. Throws an IllegalArgumentException, leaving this series unchanged,
+     * if COLUMN has no data for a year that this series holds.
+     */
+    public void divideByColumn(DoubleBuffer column, int firstYear) {
+        for (int i = nextPresent(0); i >= 0; i = nextPresent(i + 1)) {
+            int index = MIN_YEAR + i - firstYear;
+            if (index < 0 || index >= column.limit() || Double.isNaN(column.get(index))) {
+                throw new IllegalArgumentException("No data for year " + (MIN_YEAR + i));
+            }
+        }
+        for (int i = nextPresent(0); i >= 0; i = nextPresent(i + 1)) {
+            values[i] /= column.get(MIN_YEAR + i - firstYear);
+        }
+    }
+
+    /**
+     * Returns the data of this series as a new TimeSeries.
+     */
+    public TimeSeries toTimeSeries() {
+        TimeSeries ts = new TimeSeries();
+        for (int i = nextPresent(0); i >= 0; i = nextPresent(i + 1)) {
+            ts.put(MIN_YEAR + i, values[i]);
+        }
+        return ts;
+    }
+
+    private DenseTimeSeries copy() {
+        DenseTimeSeries copy = new DenseTimeSeries();
+        System.arraycopy(values, 0, copy.values, 0, NUM_YEARS);
+        System.arraycopy(present, 0, copy.present, 0, NUM_WORDS);
+        return copy;
+    }
+
+    /** Returns the first index at or after FROM whose year holds data, or -1. */
+    private int nextPresent(int from) {
+        if (from >= NUM_YEARS) {
+            return -1;
+        }
+        int w = from >>> 6;
+        long word = present[w] & (-1L << from);
+        while (true) {
+            if (word != 0) {
+                return w * 64 + Long.numberOfTrailingZeros(word);
+            }
+            w += 1;
+            if (w == NUM_WORDS) {
+                return -1;
+            }
+            word = present[w];
+        }
+    }
+
+    private static void checkYear(int year) {
+        if (year < MIN_YEAR || year > MAX_YEAR) {
+            throw new IllegalArgumentException("Year out of range: " + year);
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof DenseTimeSeries other)) {
+            return false;
+        }
+        return Arrays.equals(present, other.present) && Arrays.equals(values, other.values);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Arrays.hashCode(present) + Arrays.hashCode(values);
+    }
+
+    @Override
+    public String toString() {
+        return toTimeSeries().toString();
+    }
+}
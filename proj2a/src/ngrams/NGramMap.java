@@ -1,10 +1,14 @@
 package ngrams;
 
-import edu.princeton.cs.algs4.In;
-
+import java.nio.DoubleBuffer;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicReference;
 
 import static ngrams.TimeSeries.MAX_YEAR;
 import static ngrams.TimeSeries.MIN_YEAR;
@@ -17,45 +21,142 @@ import static ngrams.TimeSeries.MIN_YEAR;
  * file". It is not a map in the strict sense, but it does provide additional
  * functionality.
  *
+ * Every word in the data files has a dense int id, returned by wordId. Callers that
+ * query the same word repeatedly can resolve it once and use the id-based methods,
+ * which skip the lookup by word.
+ *
+ * An NGramMap is safe to query from any number of threads, and queries take no
+ * locks. All data, together with the indexes derived from it, is held by one
+ * immutable snapshot behind a single volatile reference. Each query reads that
+ * reference once and answers entirely from the snapshot it got. Returned TimeSeries
+ * are defensive copies, and returned views are read-only.
+ *
+ * New data can be merged into a live NGramMap with append, and all data can be
+ * replaced with reload. Both build a new snapshot off to the side, including any
+ * index the current snapshot has already built, and then swap it in with a single
+ * volatile write, so a query sees either all of a change or none of it. Word ids are
+ * never reassigned by an append: existing words keep their ids, and new words get
+ * new ones. A reload may assign new ids. Callers that need several queries, or a
+ * word id and the queries using it, to agree on the same data run them on
+ * snapshot().
+ *
  * @author Josh Hug
  */
 public class NGramMap {
-    private final Map<String, TimeSeries> wordsData;
-    private final TimeSeries countsData;
+    /** Collections of at most this many words are summed on the calling thread. */
+    private static final int SUM_SEQUENTIAL_CUTOFF = 256;
+
+    private final WeightMode weightMode;
+    private volatile Snapshot snapshot;
 
     /**
      * Constructs an NGramMap from WORDSFILENAME and COUNTSFILENAME.
      */
     public NGramMap(String wordsFilename, String countsFilename) {
-        wordsData = new HashMap<>();
-        In wordsFileReader = new In(wordsFilename);
-        while (wordsFileReader.hasNextLine()) {
-            String line = wordsFileReader.readLine();
-            String[] splitLine = line.split("\t");
-
-            String word = splitLine[0];
-            int year = Integer.parseInt(splitLine[1]);
-            double occurrence = Double.parseDouble(splitLine[2]);
-
-            if (!wordsData.containsKey(word)) {
-                wordsData.put(word, new TimeSeries());
-            }
-            wordsData.get(word).put(year, occurrence);
-        }
-        wordsFileReader.close();
+        this(ParallelLoader.load(wordsFilename, countsFilename));
+    }
 
-        countsData = new TimeSeries();
-        In countsFileReader = new In(countsFilename);
-        while (countsFileReader.hasNextLine()) {
-            String line = countsFileReader.readLine();
-            String[] splitLine = line.split(",");
+    /**
+     * Constructs an NGramMap that answers queries from STORE, computing weights on the fly.
+     */
+    public NGramMap(NGramStore store) {
+        this(store, WeightMode.ON_THE_FLY);
+    }
 
-            int year = Integer.parseInt(splitLine[0]);
-            double totalNumberOfWords = Double.parseDouble(splitLine[1]);
+    /**
+     * Constructs an NGramMap that answers queries from STORE, computing weights as selected by
+     * WEIGHTMODE.
+     */
+    public NGramMap(NGramStore store, WeightMode weightMode) {
+        this(new Snapshot(store, weightMode, 0), weightMode);
+    }
 
-            countsData.put(year, totalNumberOfWords);
-        }
-        countsFileReader.close();
+    private NGramMap(Snapshot snapshot, WeightMode weightMode) {
+        this.weightMode = weightMode;
+        this.snapshot = snapshot;
+    }
+
+    /**
+     * Returns an NGramMap that answers every query from the data of this NGramMap as it is
+     * now, sharing it rather than copying it. Use it to run several queries against the same
+     * data while appends happen; appends to either NGramMap do not affect the other.
+     */
+    public NGramMap snapshot() {
+        return new NGramMap(snapshot, weightMode);
+    }
+
+    /**
+     * Merges the entries of DELTAWORDSFILENAME and DELTACOUNTSFILENAME, which use the same
+     * formats as the words and counts files, into this NGramMap. See append(Builder).
+     */
+    public void append(String deltaWordsFilename, String deltaCountsFilename) {
+        append(ParallelLoader.loadBuilder(deltaWordsFilename, deltaCountsFilename,
+                ForkJoinPool.commonPool()));
+    }
+
+    /**
+     * Merges the entries of DELTA into this NGramMap. A (word, year) count or a year's total
+     * count in DELTA replaces the one already present, if any. Queries running concurrently
+     * keep reading the data as it was before the call, and queries started after it returns
+     * see all of DELTA.
+     *
+     * Only the columns of words in DELTA are copied; the others are shared with the previous
+     * data. Weight columns are recomputed as selected by the WeightMode of this NGramMap.
+     */
+    public synchronized void append(ColumnarStore.Builder delta) {
+        swap(ColumnarStore.merge(snapshot.store, delta));
+    }
+
+    /**
+     * Replaces all data of this NGramMap with the contents of WORDSFILENAME and
+     * COUNTSFILENAME. See reload(NGramStore).
+     */
+    public void reload(String wordsFilename, String countsFilename) {
+        reload(ParallelLoader.load(wordsFilename, countsFilename));
+    }
+
+    /**
+     * Replaces all data of this NGramMap with the data of STORE. Queries running
+     * concurrently keep reading the previous data, and queries started after this
+     * method returns read STORE only.
+     */
+    public synchronized void reload(NGramStore store) {
+        swap(store);
+    }
+
+    /**
+     * Builds the snapshot of STORE, with the indexes that the current snapshot has already
+     * built, and publishes it. Callers hold the lock of this NGramMap so that writers apply
+     * their changes one at a time.
+     */
+    private void swap(NGramStore store) {
+        Snapshot next = new Snapshot(store, weightMode, snapshot.version + 1);
+        next.warm(snapshot);
+        snapshot = next;
+    }
+
+    /**
+     * Returns the version of the data of this NGramMap. It starts at 0 and grows by one with
+     * every append or reload, so a result computed at one version is still valid as long as
+     * the version has not changed.
+     */
+    public long version() {
+        return snapshot.version;
+    }
+
+    /**
+     * Returns the id of WORD, or -1 if the word is not in the data files. Ids are dense:
+     * they range from 0 to the number of words minus one.
+     */
+    public int wordId(String word) {
+        return snapshot.store.row(word);
+    }
+
+    /**
+     * Returns the word with id WORDID.
+     */
+    public String word(int wordId) {
+        return snapshot.store.word(wordId);
     }
 
     /**
@@ -66,11 +167,27 @@ public class NGramMap {
      * returns an empty TimeSeries.
      */
     public TimeSeries countHistory(String word, int startYear, int endYear) {
-        TimeSeries wordHistory = wordsData.get(word);
-        if (wordHistory == null) {
-            return new TimeSeries();
-        }
-        return new TimeSeries(wordHistory, startYear, endYear);
+        return countView(word, startYear, endYear).toTimeSeries();
+    }
+
+    /**
+     * Provides a read-only view of the history of WORD between STARTYEAR and ENDYEAR, inclusive
+     * of both ends. The view reads directly from this NGramMap's storage, so unlike
+     * countHistory nothing is copied. If the word is not in the data files, returns an empty
+     * view.
+     */
+    public TimeSeriesView countView(String word, int startYear, int endYear) {
+        Snapshot data = snapshot;
+        return data.countView(data.store.row(word), startYear, endYear);
+    }
+
+    /**
+     * Provides a read-only view of the history of the word with id WORDID between STARTYEAR
+     * and ENDYEAR, inclusive of both ends. A negative WORDID, as returned by wordId for an
+     * unknown word, gives an empty view.
+     */
+    public TimeSeriesView countView(int wordId, int startYear, int endYear) {
+        return snapshot.countView(wordId, startYear, endYear);
     }
 
     /**
@@ -87,7 +204,14 @@ public class NGramMap {
      * Returns a defensive copy of the total number of words recorded per year in all volumes.
      */
     public TimeSeries totalCountHistory() {
-        return new TimeSeries(countsData, MIN_YEAR, MAX_YEAR);
+        return totalCountView().toTimeSeries();
+    }
+
+    /**
+     * Returns a read-only view of the total number of words recorded per year in all volumes.
+     */
+    public TimeSeriesView totalCountView() {
+        return TimeSeriesView.of(snapshot.store.totals(), MIN_YEAR, MIN_YEAR, MAX_YEAR);
     }
 
     /**
@@ -96,7 +220,26 @@ public class NGramMap {
      * TimeSeries.
      */
     public TimeSeries weightHistory(String word, int startYear, int endYear) {
-        return countHistory(word, startYear, endYear).dividedBy(countsData);
+        return weightView(word, startYear, endYear).toTimeSeries();
+    }
+
+    /**
+     * Provides a read-only view of the relative frequency per year of WORD between STARTYEAR
+     * and ENDYEAR, inclusive of both ends. Frequencies are computed as the view is read. If the
+     * word is not in the data files, returns an empty view.
+     */
+    public TimeSeriesView weightView(String word, int startYear, int endYear) {
+        Snapshot data = snapshot;
+        return data.weightView(data.store.row(word), startYear, endYear);
+    }
+
+    /**
+     * Provides a read-only view of the relative frequency per year of the word with id WORDID
+     * between STARTYEAR and ENDYEAR, inclusive of both ends. A negative WORDID, as returned by
+     * wordId for an unknown word, gives an empty view.
+     */
+    public TimeSeriesView weightView(int wordId, int startYear, int endYear) {
+        return snapshot.weightView(wordId, startYear, endYear);
     }
 
     /**
@@ -115,11 +258,17 @@ public class NGramMap {
      */
     public TimeSeries summedWeightHistory(Collection<String> words,
                                           int startYear, int endYear) {
-        TimeSeries summedCountHistory = new TimeSeries();
+        Snapshot data = snapshot;
+        int[] rows = new int[words.size()];
+        int numRows = 0;
         for (String word : words) {
-            summedCountHistory = summedCountHistory.plus(countHistory(word, startYear, endYear));
+            int row = data.store.row(word);
+            if (row >= 0) {
+                rows[numRows] = row;
+                numRows += 1;
+            }
         }
-        return summedCountHistory.dividedBy(this.countsData);
+        return data.summedWeightHistory(Arrays.copyOf(rows, numRows), startYear, endYear);
     }
 
     /**
@@ -129,4 +278,197 @@ public class NGramMap {
     public TimeSeries summedWeightHistory(Collection<String> words) {
         return summedWeightHistory(words, MIN_YEAR, MAX_YEAR);
     }
+
+    /**
+     * Returns all words in the data files that start with PREFIX, in sorted order. The index
+     * used to answer this query is built on first use.
+     */
+    public List<String> wordsWithPrefix(String prefix) {
+        return snapshot.prefixIndex().words(prefix);
+    }
+
+    /**
+     * Returns the ids of all words in the data files that start with PREFIX, in the sorted
+     * order of the words.
+     */
+    public int[] wordIdsWithPrefix(String prefix) {
+        return snapshot.prefixIndex().rows(prefix);
+    }
+
+    /**
+     * Provides the summed relative frequency per year of all words starting with PREFIX
+     * between STARTYEAR and ENDYEAR, inclusive of both ends.
+     */
+    public TimeSeries summedPrefixWeightHistory(String prefix, int startYear, int endYear) {
+        Snapshot data = snapshot;
+        return data.summedWeightHistory(data.prefixIndex().rows(prefix), startYear, endYear);
+    }
+
+    /**
+     * Returns the K words with the highest total count between STARTYEAR and ENDYEAR, inclusive
+     * of both ends, mapped to that total count. Iterating over the returned map visits the words
+     * from most to least frequent. The per-year rankings used to answer this query are built on
+     * first use.
+     */
+    public Map<String, Double> topWords(int startYear, int endYear, int k) {
+        Snapshot data = snapshot;
+        Map<String, Double> top = new LinkedHashMap<>();
+        for (TopWords.Scored scored : data.topWords().top(startYear, endYear, k)) {
+            top.put(data.store.word(scored.row()), scored.score());
+        }
+        return top;
+    }
+
+    /**
+     * Returns the K words other than WORD whose relative frequency between STARTYEAR and
+     * ENDYEAR, inclusive of both ends, has the highest Pearson correlation with that of WORD,
+     * mapped to that correlation. Iterating over the returned map visits the words from best
+     * to worst match. A year in which a word does not appear counts as a frequency of 0. If
+     * WORD is not in the data files, or its frequency is constant over the range, returns an
+     * empty map.
+     */
+    public Map<String, Double> similarWords(String word, int startYear, int endYear, int k) {
+        Snapshot data = snapshot;
+        Map<String, Double> similar = new LinkedHashMap<>();
+        int row = data.store.row(word);
+        if (row < 0) {
+            return similar;
+        }
+        for (TopWords.Scored scored : Correlations.mostCorrelated(data.store, row, startYear, endYear,
+                k, ForkJoinPool.commonPool())) {
+            similar.put(data.store.word(scored.row()), scored.score());
+        }
+        return similar;
+    }
+
+    /**
+     * One immutable version of the data of an NGramMap, with the indexes derived from it.
+     * The indexes are built on first use, and belong to this version only.
+     */
+    private static final class Snapshot {
+        private final NGramStore store;
+        private final long version;
+        private final WeightColumns weights;
+        private final AtomicReference<PrefixIndex> prefixIndex = new AtomicReference<>();
+        private final AtomicReference<TopWords> topWords = new AtomicReference<>();
+
+        Snapshot(NGramStore store, WeightMode weightMode, long version) {
+            this.store = store;
+            this.version = version;
+            this.weights = switch (weightMode) {
+                case ON_THE_FLY -> null;
+                case LAZY -> new WeightColumns(store, false);
+                case PRECOMPUTED -> new WeightColumns(store, true);
+            };
+        }
+
+        TimeSeriesView countView(int row, int startYear, int endYear) {
+            if (row < 0) {
+                return TimeSeriesView.empty();
+            }
+            return TimeSeriesView.of(store.column(row), store.firstYear(row), startYear, endYear);
+        }
+
+        TimeSeriesView weightView(int row, int startYear, int endYear) {
+            if (row < 0) {
+                return TimeSeriesView.empty();
+            }
+            if (weights != null) {
+                DoubleBuffer column = weights.column(row);
+                if (column != null) {
+                    return TimeSeriesView.of(column, store.firstYear(row), startYear, endYear);
+                }
+            }
+            return countView(row, startYear, endYear).dividedBy(store.totals(), MIN_YEAR);
+        }
+
+        /**
+         * Returns the summed relative frequency per year of the store ROWS between STARTYEAR
+         * and ENDYEAR, inclusive of both ends.
+         */
+        TimeSeries summedWeightHistory(int[] rows, int startYear, int endYear) {
+            SumTask task = new SumTask(store, rows, 0, rows.length, startYear, endYear);
+            DenseTimeSeries summedCountHistory = rows.length > SUM_SEQUENTIAL_CUTOFF
+                    ? ForkJoinPool.commonPool().invoke(task) : task.compute();
+            summedCountHistory.divideByColumn(store.totals(), MIN_YEAR);
+            return summedCountHistory.toTimeSeries();
+        }
+
+        /**
+         * Returns the prefix index of this snapshot, building it if needed. Threads that
+         * race to build it may each build one, but all of them return the first one
+         * published.
+         */
+        PrefixIndex prefixIndex() {
+            PrefixIndex index = prefixIndex.get();
+            if (index == null) {
+                prefixIndex.compareAndSet(null, new PrefixIndex(store));
+                index = prefixIndex.get();
+            }
+            return index;
+        }
+
+        /** Returns the top-K index of this snapshot, building it as prefixIndex does. */
+        TopWords topWords() {
+            TopWords index = topWords.get();
+            if (index == null) {
+                topWords.compareAndSet(null, new TopWords(store));
+                index = topWords.get();
+            }
+            return index;
+        }
+
+        /**
+         * Builds every index that PREVIOUS has built, so that queries never pay for it
+         * after this snapshot is published.
+         */
+        void warm(Snapshot previous) {
+            if (previous.prefixIndex.get() != null) {
+                prefixIndex();
+            }
+            if (previous.topWords.get() != null) {
+                topWords();
+            }
+        }
+    }
+
+    /**
+     * Sums the count columns of ROWS[FROM] to ROWS[TO - 1] between STARTYEAR and ENDYEAR.
+     * Ranges longer than SUM_SEQUENTIAL_CUTOFF are split in half and summed in parallel,
+     * each half into its own accumulator; the accumulators are then added together.
+     */
+    private static class SumTask extends RecursiveTask<DenseTimeSeries> {
+        private final NGramStore store;
+        private final int[] rows;
+        private final int from;
+        private final int to;
+        private final int startYear;
+        private final int endYear;
+
+        SumTask(NGramStore store, int[] rows, int from, int to, int startYear, int endYear) {
+            this.store = store;
+            this.rows = rows;
+            this.from = from;
+            this.to = to;
+            this.startYear = startYear;
+            this.endYear = endYear;
+        }
+
+        @Override
+        protected DenseTimeSeries compute() {
+            if (to - from <= SUM_SEQUENTIAL_CUTOFF) {
+                DenseTimeSeries sum = new DenseTimeSeries();
+                for (int i = from; i < to; i += 1) {
+                    sum.addColumn(store.column(rows[i]), store.firstYear(rows[i]), startYear, endYear);
+                }
+                return sum;
+            }
+            int mid = (from + to) >>> 1;
+            SumTask right = new SumTask(store, rows, mid, to, startYear, endYear);
+            right.fork();
+            DenseTimeSeries sum = new SumTask(store, rows, from, mid, startYear, endYear).compute();
+            sum.add(right.join());
+            return sum;
+        }
+    }
 }
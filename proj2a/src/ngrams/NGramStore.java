@@ -0,0 +1,38 @@
+package ngrams;
+
+import java.nio.DoubleBuffer;
+
+/**
+ * A storage engine behind an NGramMap.
+ *
+ * Every word of the words file is assigned a row number between 0 and size() - 1.
+ * The counts of a row are stored as a dense column indexed by year: the value at
+ * index i of column(row) is the count for year firstYear(row) + i. Years that have
+ * no data inside a column are stored as NaN.
+ */
+public interface NGramStore {
+
+    /** Returns the number of distinct words in this store. */
+    int size();
+
+    /** Returns the row of WORD, or -1 if the word is not in this store. */
+    int row(String word);
+
+    /** Returns the word stored at ROW. */
+    String word(int row);
+
+    /** Returns the year of the first entry of the column of ROW. */
+    int firstYear(int row);
+
+    /**
+     * Returns a read-only view of the counts of ROW. Index 0 corresponds to
+     * firstYear(row), and the limit of the buffer is the length of the column.
+     */
+    DoubleBuffer column(int row);
+
+    /**
+     * Returns a read-only view of the total number of words recorded per year.
+     * Index 0 corresponds to TimeSeries.MIN_YEAR, and years without data are NaN.
+     */
+    DoubleBuffer totals();
+}
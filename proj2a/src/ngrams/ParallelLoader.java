@@ -0,0 +1,280 @@
+package ngrams;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Builds a ColumnarStore from a words file using every worker of a ForkJoinPool.
+ *
+ * The words file is split into byte ranges of roughly CHUNK_BYTES that end on a
+ * newline. Each range is parsed into its own ColumnarStore.Builder by a hand-written
+ * tokenizer that works directly on the bytes of the file: words are interned into the
+ * builder's Vocabulary straight from those bytes, and only looked up when the word
+ * changes from one line to the next, so parsing allocates no String per line. The
+ * per-chunk builders are then merged pairwise, in file order, so later lines still win
+ * over earlier ones.
+ */
+public class ParallelLoader {
+    /** Nominal size of the byte range parsed by one task. */
+    public static final int CHUNK_BYTES = 1 << 23;
+
+    /**
+     * Reads WORDSFILENAME and COUNTSFILENAME into a new ColumnarStore using the
+     * common ForkJoinPool.
+     */
+    public static ColumnarStore load(String wordsFilename, String countsFilename) {
+        return load(wordsFilename, countsFilename, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Reads WORDSFILENAME and COUNTSFILENAME into a new ColumnarStore, parsing the
+     * words file on the workers of POOL.
+     */
+    public static ColumnarStore load(String wordsFilename, String countsFilename, ForkJoinPool pool) {
+        return loadBuilder(wordsFilename, countsFilename, pool).build();
+    }
+
+    /**
+     * Reads WORDSFILENAME and COUNTSFILENAME into a new ColumnarStore.Builder, parsing
+     * the words file on the workers of POOL. This is useful to read a delta that is then
+     * merged into an existing store with ColumnarStore.merge.
+     */
+    public static ColumnarStore.Builder loadBuilder(String wordsFilename, String countsFilename,
+                                                    ForkJoinPool pool) {
+        return loadBuilder(wordsFilename, countsFilename, pool, CHUNK_BYTES);
+    }
+
+    /**
+     * Reads WORDSFILENAME and COUNTSFILENAME into a new ColumnarStore.Builder like
+     * loadBuilder(WORDSFILENAME, COUNTSFILENAME, POOL), but with chunks of about
+     * CHUNKBYTES instead of CHUNK_BYTES.
+     */
+    public static ColumnarStore.Builder loadBuilder(String wordsFilename, String countsFilename,
+                                                    ForkJoinPool pool, int chunkBytes) {
+        try (FileChannel channel = FileChannel.open(Path.of(wordsFilename), StandardOpenOption.READ)) {
+            long[] boundaries = chunkBoundaries(channel, chunkBytes);
+            ColumnarStore.Builder builder = pool.invoke(new ParseTask(channel, boundaries, 0,
+                    boundaries.length - 1));
+            ColumnarStore.readCountsFile(countsFilename, builder);
+            return builder;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Returns the offsets that split the file of CHANNEL into ranges of about
+     * CHUNKBYTES each. Every offset but the first and the last is the position right
+     * after a newline, so no line is split across two ranges.
+     */
+    public static long[] chunkBoundaries(FileChannel channel, int chunkBytes) throws IOException {
+        long size = channel.size();
+        List<Long> boundaries = new ArrayList<>();
+        boundaries.add(0L);
+        ByteBuffer window = ByteBuffer.allocate(4096);
+        long position = chunkBytes;
+        while (position < size) {
+            long newline = -1;
+            while (newline < 0 && position < size) {
+                window.clear();
+                int read = channel.read(window, position);
+                for (int i = 0; i < read; i += 1) {
+                    if (window.get(i) == '\n') {
+                        newline = position + i;
+                        break;
+                    }
+                }
+                if (newline < 0) {
+                    position += read;
+                }
+            }
+            if (newline < 0 || newline + 1 >= size) {
+                break;
+            }
+            boundaries.add(newline + 1);
+            position = newline + 1 + chunkBytes;
+        }
+        boundaries.add(size);
+
+        long[] result = new long[boundaries.size()];
+        for (int i = 0; i < result.length; i += 1) {
+            result[i] = boundaries.get(i);
+        }
+        return result;
+    }
+
+    /**
+     * Parses the chunks FROM (inclusive) to TO (exclusive) and returns a builder
+     * holding all of their entries.
+     */
+    private static class ParseTask extends RecursiveTask<ColumnarStore.Builder> {
+        private final FileChannel channel;
+        private final long[] boundaries;
+        private final int from;
+        private final int to;
+
+        ParseTask(FileChannel channel, long[] boundaries, int from, int to) {
+            this.channel = channel;
+            this.boundaries = boundaries;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected ColumnarStore.Builder compute() {
+            if (to - from <= 1) {
+                ColumnarStore.Builder builder = new ColumnarStore.Builder();
+                if (to > from) {
+                    parseChunk(readChunk(boundaries[from], boundaries[to]), builder);
+                }
+                return builder;
+            }
+            int mid = (from + to) >>> 1;
+            ParseTask right = new ParseTask(channel, boundaries, mid, to);
+            right.fork();
+            ColumnarStore.Builder builder = new ParseTask(channel, boundaries, from, mid).compute();
+            builder.addAll(right.join());
+            return builder;
+        }
+
+        private byte[] readChunk(long start, long end) {
+            byte[] bytes = new byte[(int) (end - start)];
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            try {
+                while (buffer.hasRemaining()) {
+                    int read = channel.read(buffer, start + buffer.position());
+                    if (read < 0) {
+                        throw new IOException("Unexpected end of file");
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return bytes;
+        }
+    }
+
+    /**
+     * Adds every "word TAB year TAB count ..." line of BYTES to BUILDER. A line whose
+     * year lies outside MIN_YEAR and MAX_YEAR of TimeSeries is malformed.
+     */
+    static void parseChunk(byte[] bytes, ColumnarStore.Builder builder) {
+        int row = -1;
+        int wordStart = 0;
+        int wordLength = -1;
+        int pos = 0;
+        while (pos < bytes.length) {
+            int lineEnd = pos;
+            while (lineEnd < bytes.length && bytes[lineEnd] != '\n') {
+                lineEnd += 1;
+            }
+            int end = lineEnd;
+            if (end > pos && bytes[end - 1] == '\r') {
+                end -= 1;
+            }
+            if (end > pos) {
+                int tab = indexOf(bytes, (byte) '\t', pos, end);
+                if (tab < 0) {
+                    throw badLine(bytes, pos, end);
+                }
+                int length = tab - pos;
+                if (length != wordLength
+                        || !Arrays.equals(bytes, pos, tab, bytes, wordStart, wordStart + wordLength)) {
+                    row = builder.row(bytes, pos, tab);
+                    wordLength = length;
+                }
+                wordStart = pos;
+
+                int yearEnd = indexOf(bytes, (byte) '\t', tab + 1, end);
+                if (yearEnd < 0) {
+                    throw badLine(bytes, pos, end);
+                }
+                int countEnd = indexOf(bytes, (byte) '\t', yearEnd + 1, end);
+                if (countEnd < 0) {
+                    countEnd = end;
+                }
+                int year = parseYear(bytes, tab + 1, yearEnd);
+                builder.add(row, year, parseCount(bytes, yearEnd + 1, countEnd));
+            }
+            pos = lineEnd + 1;
+        }
+    }
+
+    private static int indexOf(byte[] bytes, byte b, int from, int to) {
+        for (int i = from; i < to; i += 1) {
+            if (bytes[i] == b) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Parses the digits of BYTES between FROM and TO as a year. A year out of the range
+     * of TimeSeries would make the builder allocate a column up to it, and could never be
+     * read back.
+     */
+    private static int parseYear(byte[] bytes, int from, int to) {
+        /* Checking the length first keeps long digit strings from overflowing into range. */
+        if (to - from > 9) {
+            throw badLine(bytes, from, to);
+        }
+        long year = parseLong(bytes, from, to);
+        if (year < TimeSeries.MIN_YEAR || year > TimeSeries.MAX_YEAR) {
+            throw badLine(bytes, from, to);
+        }
+        return (int) year;
+    }
+
+    /** Parses the digits of BYTES between FROM and TO as a non-negative long. */
+    private static long parseLong(byte[] bytes, int from, int to) {
+        if (from == to) {
+            throw badLine(bytes, from, to);
+        }
+        long value = 0;
+        for (int i = from; i < to; i += 1) {
+            int digit = bytes[i] - '0';
+            if (digit < 0 || digit > 9) {
+                throw badLine(bytes, from, to);
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    /**
+     * Parses a count, which is a plain integer in the NGrams files. Anything else
+     * (a sign, a decimal point or an exponent) falls back to Double.parseDouble.
+     */
+    private static double parseCount(byte[] bytes, int from, int to) {
+        if (to - from > 0 && to - from < 19) {
+            boolean digitsOnly = true;
+            for (int i = from; i < to && digitsOnly; i += 1) {
+                digitsOnly = bytes[i] >= '0' && bytes[i] <= '9';
+            }
+            if (digitsOnly) {
+                return parseLong(bytes, from, to);
+            }
+        }
+        try {
+            return Double.parseDouble(new String(bytes, from, to - from, StandardCharsets.UTF_8));
+        } catch (NumberFormatException e) {
+            throw badLine(bytes, from, to);
+        }
+    }
+
+    private static IllegalArgumentException badLine(byte[] bytes, int from, int to) {
+        return new IllegalArgumentException("Malformed line in words file: "
+                + new String(bytes, from, to - from, StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,78 @@
+package ngrams;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The rows of an NGramStore sorted by word, so that all words starting with a given
+ * prefix form one contiguous range that is found with two binary searches. A
+ * lookup takes O(log n) comparisons of at most prefix.length() characters, plus
+ * the number of matches.
+ */
+class PrefixIndex {
+    private final String[] words;
+    private final int[] rows;
+
+    PrefixIndex(NGramStore store) {
+        int size = store.size();
+        Integer[] order = new Integer[size];
+        String[] unsorted = new String[size];
+        for (int row = 0; row < size; row += 1) {
+            order[row] = row;
+            unsorted[row] = store.word(row);
+        }
+        Arrays.sort(order, (a, b) -> unsorted[a].compareTo(unsorted[b]));
+
+        words = new String[size];
+        rows = new int[size];
+        for (int i = 0; i < size; i += 1) {
+            rows[i] = order[i];
+            words[i] = unsorted[order[i]];
+        }
+    }
+
+    /** Returns the words starting with PREFIX, in sorted order. */
+    List<String> words(String prefix) {
+        int from = lowerBound(prefix);
+        int to = upperBound(prefix, from);
+        return new ArrayList<>(Arrays.asList(words).subList(from, to));
+    }
+
+    /** Returns the store rows of the words starting with PREFIX, in word order. */
+    int[] rows(String prefix) {
+        int from = lowerBound(prefix);
+        int to = upperBound(prefix, from);
+        return Arrays.copyOfRange(rows, from, to);
+    }
+
+    /** Returns the first index whose word is not less than PREFIX. */
+    private int lowerBound(String prefix) {
+        int lo = 0;
+        int hi = words.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (words[mid].compareTo(prefix) < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /** Returns the first index at or after FROM whose word does not start with PREFIX. */
+    private int upperBound(String prefix, int from) {
+        int lo = from;
+        int hi = words.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (words[mid].startsWith(prefix)) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+}
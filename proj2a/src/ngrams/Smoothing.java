@@ -0,0 +1,85 @@
+package ngrams;
+
+/**
+ * A window operator to apply to a TimeSeries, parsed from a short text spec:
+ *
+ *   "" or "none"   the series unchanged
+ *   "ma:N"         moving average over N years
+ *   "ewma:ALPHA"   exponentially weighted moving average with smoothing factor ALPHA
+ *   "diff"         change from one year to the next
+ *   "cumsum"       running total
+ */
+public record Smoothing(Kind kind, double parameter) {
+    /** The operators a Smoothing can apply. */
+    public enum Kind {
+        NONE, MOVING_AVERAGE, EWMA, DIFF, CUMULATIVE_SUM
+    }
+
+    /** The Smoothing that leaves series unchanged. */
+    public static final Smoothing NONE = new Smoothing(Kind.NONE, 0);
+
+    /**
+     * Returns the Smoothing described by SPEC. A null or blank SPEC means NONE. Throws an
+     * IllegalArgumentException if SPEC is not one of the forms listed above, or if its
+     * parameter is out of range for its operator.
+     */
+    public static Smoothing parse(String spec) {
+        if (spec == null || spec.isBlank()) {
+            return NONE;
+        }
+        String[] parts = spec.trim().split(":", 2);
+        String name = parts[0].trim();
+        Smoothing smoothing;
+        try {
+            smoothing = switch (name) {
+                case "none" -> NONE;
+                case "diff" -> new Smoothing(Kind.DIFF, 0);
+                case "cumsum" -> new Smoothing(Kind.CUMULATIVE_SUM, 0);
+                case "ma" -> new Smoothing(Kind.MOVING_AVERAGE, Integer.parseInt(parameter(parts, spec)));
+                case "ewma" -> new Smoothing(Kind.EWMA, Double.parseDouble(parameter(parts, spec)));
+                default -> throw new IllegalArgumentException("Unknown smoothing: " + spec);
+            };
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Bad smoothing parameter: " + spec);
+        }
+        if (parts.length > 1 && (smoothing.kind == Kind.NONE || smoothing.kind == Kind.DIFF
+                || smoothing.kind == Kind.CUMULATIVE_SUM)) {
+            throw new IllegalArgumentException("Smoothing takes no parameter: " + spec);
+        }
+        /* Applying to an empty series checks the parameter range. */
+        smoothing.apply(new TimeSeries());
+        return smoothing;
+    }
+
+    private static String parameter(String[] parts, String spec) {
+        if (parts.length < 2) {
+            throw new IllegalArgumentException("Smoothing needs a parameter: " + spec);
+        }
+        return parts[1].trim();
+    }
+
+    /**
+     * Returns the result of this operator on TS as a new TimeSeries. For NONE, returns TS
+     * itself.
+     */
+    public TimeSeries apply(TimeSeries ts) {
+        return switch (kind) {
+            case NONE -> ts;
+            case MOVING_AVERAGE -> ts.movingAverage((int) parameter);
+            case EWMA -> ts.ewma(parameter);
+            case DIFF -> ts.diff();
+            case CUMULATIVE_SUM -> ts.cumulativeSum();
+        };
+    }
+
+    @Override
+    public String toString() {
+        return switch (kind) {
+            case NONE -> "none";
+            case MOVING_AVERAGE -> "ma:" + (int) parameter;
+            case EWMA -> "ewma:" + parameter;
+            case DIFF -> "diff";
+            case CUMULATIVE_SUM -> "cumsum";
+        };
+    }
+}
@@ -0,0 +1,271 @@
+package ngrams;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Comparator;
+
+import static ngrams.TimeSeries.MAX_YEAR;
+import static ngrams.TimeSeries.MIN_YEAR;
+
+/**
+ * An NGramStore backed by a memory-mapped binary snapshot of the words and counts
+ * files. Opening a snapshot only maps the file, so it is nearly instant, and every
+ * JVM on the same host that opens the same snapshot shares its pages through the
+ * operating system's page cache.
+ *
+ * A snapshot file is laid out as follows (all numbers big-endian):
+ *
+ *   header   MAGIC, VERSION, number of words, number of values,
+ *            number of string table bytes
+ *   totals   one double per year from MIN_YEAR to MAX_YEAR, NaN for no data
+ *   values   the columns of every word, one after another
+ *   rows     one fixed-width record per word: index of its column in values,
+ *            offset and length of its word in the string table, first year,
+ *            column length
+ *   strings  the UTF-8 encoded words
+ *
+ * Rows are sorted by the unsigned bytes of their UTF-8 encoding, so that a word
+ * is found by binary search without building any table on the heap.
+ *
+ * Each section must be smaller than 2GB, which is the largest region a single
+ * MappedByteBuffer can address.
+ */
+public class SnapshotStore implements NGramStore {
+    private static final int MAGIC = 0x4E475331; // "NGS1"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 32;
+    private static final int ROW_BYTES = 32;
+    private static final int NUM_YEARS = MAX_YEAR - MIN_YEAR + 1;
+
+    private final int size;
+    private final DoubleBuffer totals;
+    private final DoubleBuffer values;
+    private final ByteBuffer rows;
+    private final ByteBuffer strings;
+
+    private SnapshotStore(int size, DoubleBuffer totals, DoubleBuffer values,
+                          ByteBuffer rows, ByteBuffer strings) {
+        this.size = size;
+        this.totals = totals;
+        this.values = values;
+        this.rows = rows;
+        this.strings = strings;
+    }
+
+    /**
+     * Compiles a words file and a counts file into a snapshot. Usage:
+     *
+     *   java ngrams.SnapshotStore WORDSFILE COUNTSFILE SNAPSHOTFILE
+     */
+    public static void main(String[] args) {
+        if (args.length != 3) {
+            System.out.println("Usage: java ngrams.SnapshotStore WORDSFILE COUNTSFILE SNAPSHOTFILE");
+            return;
+        }
+        write(ParallelLoader.load(args[0], args[1]), args[2]);
+    }
+
+    /**
+     * Writes the contents of STORE to a new snapshot file named SNAPSHOTFILENAME.
+     */
+    public static void write(NGramStore store, String snapshotFilename) {
+        int size = store.size();
+        byte[][] encodedWords = new byte[size][];
+        Integer[] order = new Integer[size];
+        long numValues = 0;
+        long numStringBytes = 0;
+        for (int row = 0; row < size; row += 1) {
+            encodedWords[row] = store.word(row).getBytes(StandardCharsets.UTF_8);
+            order[row] = row;
+            numValues += store.column(row).limit();
+            numStringBytes += encodedWords[row].length;
+        }
+        Arrays.sort(order, Comparator.comparing(row -> encodedWords[row], Arrays::compareUnsigned));
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(snapshotFilename), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(size);
+            out.writeInt(0);
+            out.writeLong(numValues);
+            out.writeLong(numStringBytes);
+
+            DoubleBuffer storeTotals = store.totals();
+            for (int i = 0; i < NUM_YEARS; i += 1) {
+                out.writeDouble(storeTotals.get(i));
+            }
+            for (int row : order) {
+                DoubleBuffer column = store.column(row);
+                for (int i = 0; i < column.limit(); i += 1) {
+                    out.writeDouble(column.get(i));
+                }
+            }
+
+            long valueIndex = 0;
+            long stringOffset = 0;
+            for (int row : order) {
+                int length = store.column(row).limit();
+                out.writeLong(valueIndex);
+                out.writeLong(stringOffset);
+                out.writeInt(encodedWords[row].length);
+                out.writeInt(store.firstYear(row));
+                out.writeInt(length);
+                out.writeInt(0);
+                valueIndex += length;
+                stringOffset += encodedWords[row].length;
+            }
+            for (int row : order) {
+                out.write(encodedWords[row]);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Maps the snapshot file named SNAPSHOTFILENAME into memory, first compiling it from
+     * WORDSFILENAME and COUNTSFILENAME if it does not exist or is older than either.
+     */
+    public static SnapshotStore open(String snapshotFilename, String wordsFilename, String countsFilename) {
+        File snapshotFile = new File(snapshotFilename);
+        if (!snapshotFile.exists()
+                || snapshotFile.lastModified() < new File(wordsFilename).lastModified()
+                || snapshotFile.lastModified() < new File(countsFilename).lastModified()) {
+            /* Other JVMs may have the old snapshot mapped, so the new one replaces it whole
+             * instead of being written over it. */
+            String tempFilename = snapshotFilename + ".tmp";
+            write(ParallelLoader.load(wordsFilename, countsFilename), tempFilename);
+            try {
+                Files.move(Path.of(tempFilename), snapshotFile.toPath(),
+                        StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return open(snapshotFilename);
+    }
+
+    /**
+     * Maps the snapshot file named SNAPSHOTFILENAME into memory.
+     */
+    public static SnapshotStore open(String snapshotFilename) {
+        try (FileChannel channel = FileChannel.open(Path.of(snapshotFilename), StandardOpenOption.READ)) {
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES);
+            if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+                throw new IllegalArgumentException(snapshotFilename + " is not an NGram snapshot");
+            }
+            int size = header.getInt();
+            header.getInt();
+            long numValues = header.getLong();
+            long numStringBytes = header.getLong();
+
+            long totalsStart = HEADER_BYTES;
+            long valuesStart = totalsStart + (long) NUM_YEARS * Double.BYTES;
+            long rowsStart = valuesStart + numValues * Double.BYTES;
+            long stringsStart = rowsStart + (long) size * ROW_BYTES;
+            if (channel.size() != stringsStart + numStringBytes) {
+                throw new IllegalArgumentException(snapshotFilename + " is truncated");
+            }
+
+            /* Mappings stay valid after the channel is closed. */
+            DoubleBuffer totals = map(channel, totalsStart, valuesStart).asDoubleBuffer();
+            DoubleBuffer values = map(channel, valuesStart, rowsStart).asDoubleBuffer();
+            ByteBuffer rows = map(channel, rowsStart, stringsStart);
+            ByteBuffer strings = map(channel, stringsStart, stringsStart + numStringBytes);
+            return new SnapshotStore(size, totals, values, rows, strings);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static ByteBuffer map(FileChannel channel, long start, long end) throws IOException {
+        return channel.map(FileChannel.MapMode.READ_ONLY, start, end - start).asReadOnlyBuffer();
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public int row(String word) {
+        byte[] key = word.getBytes(StandardCharsets.UTF_8);
+        int lo = 0;
+        int hi = size - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int cmp = compareWord(mid, key);
+            if (cmp < 0) {
+                lo = mid + 1;
+            } else if (cmp > 0) {
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public String word(int row) {
+        byte[] bytes = new byte[stringLength(row)];
+        strings.get((int) stringOffset(row), bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public int firstYear(int row) {
+        return rows.getInt(row * ROW_BYTES + 20);
+    }
+
+    @Override
+    public DoubleBuffer column(int row) {
+        int valueIndex = (int) rows.getLong(row * ROW_BYTES);
+        int length = rows.getInt(row * ROW_BYTES + 24);
+        return values.slice(valueIndex, length);
+    }
+
+    @Override
+    public DoubleBuffer totals() {
+        return totals.duplicate();
+    }
+
+    private long stringOffset(int row) {
+        return rows.getLong(row * ROW_BYTES + 8);
+    }
+
+    private int stringLength(int row) {
+        return rows.getInt(row * ROW_BYTES + 16);
+    }
+
+    /**
+     * Compares the word at ROW with KEY by their unsigned UTF-8 bytes, reading the
+     * word directly from the mapped string table.
+     */
+    private int compareWord(int row, byte[] key) {
+        int offset = (int) stringOffset(row);
+        int length = stringLength(row);
+        int n = Math.min(length, key.length);
+        for (int i = 0; i < n; i += 1) {
+            int cmp = Byte.compareUnsigned(strings.get(offset + i), key[i]);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return length - key.length;
+    }
+}
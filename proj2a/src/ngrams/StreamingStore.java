@@ -0,0 +1,609 @@
+package ngrams;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * An NGramStore for words files that are too large to be loaded on the heap.
+ *
+ * Instead of reading the words into memory, a StreamingStore scans the words file
+ * once and writes an index file that maps every word to the byte ranges ("blocks")
+ * of the words file holding its lines. Index entries are sorted in bounded runs
+ * and merged on disk, so building the index also takes constant memory. Queries
+ * binary-search the memory-mapped index, then read and parse the blocks of the
+ * word. The parsed columns of the most recently used words are kept in a bounded
+ * cache. The index is mapped in segments, so neither it nor the words file is
+ * limited to 2 GB.
+ *
+ * An index file is laid out as follows (all numbers big-endian):
+ *
+ *   header   MAGIC, VERSION, number of entries, number of rows,
+ *            number of key bytes, length and modification time of the
+ *            words file the index was built from
+ *   entries  one record per block sorted by word, then by block offset: offset
+ *            and length of the word in keys, length and offset of the block
+ *   rows     for every distinct word, the index of its first entry, followed by
+ *            the number of entries
+ *   keys     the UTF-8 encoded distinct words
+ */
+public class StreamingStore implements NGramStore {
+    /** Default number of words whose parsed columns are kept in memory. */
+    public static final int DEFAULT_CACHE_SIZE = 4096;
+
+    private static final int MAGIC = 0x4E474931; // "NGI1"
+    private static final int VERSION = 2;
+    private static final int HEADER_BYTES = 40;
+    private static final int ENTRY_BYTES = 24;
+    private static final int RUN_ENTRIES = 1 << 16;
+
+    /* Sections of the index are mapped in segments of at most 1 GiB (1.5 GiB for the
+     * entries), each a whole number of records so that no number spans two segments. */
+    private static final long SEGMENT_BYTES = 1L << 30;
+    private static final long ENTRY_SEGMENT_BYTES = (long) ENTRY_BYTES << 26;
+
+    private final FileChannel wordsChannel;
+    private final int size;
+    private final Section entries;
+    private final Section rows;
+    private final Section keys;
+    private final double[] totals;
+    private final Map<Integer, ColumnarStore> cache;
+
+    /** The row each thread loaded last, with its column. */
+    private final ThreadLocal<Loaded> lastLoaded = new ThreadLocal<>();
+
+    private record Loaded(int row, ColumnarStore column) {
+    }
+
+    private StreamingStore(FileChannel wordsChannel, int size, Section entries, Section rows,
+                           Section keys, double[] totals, int cacheSize) {
+        this.wordsChannel = wordsChannel;
+        this.size = size;
+        this.entries = entries;
+        this.rows = rows;
+        this.keys = keys;
+        this.totals = totals;
+        this.cache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, ColumnarStore> eldest) {
+                return size() > cacheSize;
+            }
+        };
+    }
+
+    /**
+     * Opens WORDSFILENAME and COUNTSFILENAME with the index stored in INDEXFILENAME,
+     * keeping the columns of at most CACHESIZE words in memory. The index is built
+     * first if it does not exist or was built from a words file of another length or
+     * modification time.
+     */
+    public static StreamingStore open(String wordsFilename, String countsFilename,
+                                      String indexFilename, int cacheSize) {
+        File wordsFile = new File(wordsFilename);
+        File indexFile = new File(indexFilename);
+        if (!isCurrent(indexFile, wordsFile)) {
+            buildIndex(wordsFilename, indexFilename);
+        }
+
+        ColumnarStore.Builder totalsBuilder = new ColumnarStore.Builder();
+        ColumnarStore.readCountsFile(countsFilename, totalsBuilder);
+        DoubleBuffer totalsBuffer = totalsBuilder.build().totals();
+        double[] totals = new double[totalsBuffer.limit()];
+        totalsBuffer.get(totals);
+
+        try (FileChannel indexChannel = FileChannel.open(indexFile.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer header = indexChannel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES);
+            if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+                throw new IllegalArgumentException(indexFilename + " is not an NGram index");
+            }
+            int numEntries = header.getInt();
+            int numRows = header.getInt();
+            long numKeyBytes = header.getLong();
+
+            long entriesStart = HEADER_BYTES;
+            long rowsStart = entriesStart + (long) numEntries * ENTRY_BYTES;
+            long keysStart = rowsStart + (long) (numRows + 1) * Integer.BYTES;
+            Section entries = new Section(indexChannel, entriesStart, rowsStart, ENTRY_SEGMENT_BYTES);
+            Section rows = new Section(indexChannel, rowsStart, keysStart, SEGMENT_BYTES);
+            Section keys = new Section(indexChannel, keysStart, keysStart + numKeyBytes, SEGMENT_BYTES);
+
+            FileChannel wordsChannel = FileChannel.open(wordsFile.toPath(), StandardOpenOption.READ);
+            return new StreamingStore(wordsChannel, numRows, entries, rows, keys, totals, cacheSize);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Returns true if INDEXFILE is an index of this version built from WORDSFILE as it
+     * is now. Comparing the length and modification time recorded in the header, rather
+     * than the modification times of both files, also catches a words file replaced by
+     * an older copy.
+     */
+    private static boolean isCurrent(File indexFile, File wordsFile) {
+        if (indexFile.length() < HEADER_BYTES) {
+            return false;
+        }
+        try (DataInputStream in = new DataInputStream(new FileInputStream(indexFile))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return false;
+            }
+            /* Skips the sizes of the sections. */
+            in.skipNBytes(2 * Integer.BYTES + Long.BYTES);
+            long wordsLength = in.readLong();
+            long wordsModified = in.readLong();
+            return wordsLength == wordsFile.length() && wordsModified == wordsFile.lastModified();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * A section of the index file, mapped as consecutive segments because a single
+     * mapping cannot exceed 2 GB.
+     */
+    private static class Section {
+        private final ByteBuffer[] segments;
+        private final long segmentBytes;
+
+        /**
+         * Maps the bytes of CHANNEL from START to END in segments of SEGMENTBYTES, which
+         * must be a multiple of the size of every number read from the section.
+         */
+        Section(FileChannel channel, long start, long end, long segmentBytes) throws IOException {
+            this.segmentBytes = segmentBytes;
+            segments = new ByteBuffer[(int) ((end - start + segmentBytes - 1) / segmentBytes)];
+            for (int i = 0; i < segments.length; i += 1) {
+                long from = start + i * segmentBytes;
+                long length = Math.min(segmentBytes, end - from);
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, from, length).asReadOnlyBuffer();
+            }
+        }
+
+        byte get(long position) {
+            return segments[(int) (position / segmentBytes)].get((int) (position % segmentBytes));
+        }
+
+        int getInt(long position) {
+            return segments[(int) (position / segmentBytes)].getInt((int) (position % segmentBytes));
+        }
+
+        long getLong(long position) {
+            return segments[(int) (position / segmentBytes)].getLong((int) (position % segmentBytes));
+        }
+
+        /** Reads DST.length bytes starting at POSITION into DST. */
+        void get(long position, byte[] dst) {
+            int done = 0;
+            while (done < dst.length) {
+                long at = position + done;
+                ByteBuffer segment = segments[(int) (at / segmentBytes)];
+                int offset = (int) (at % segmentBytes);
+                int n = Math.min(dst.length - done, segment.limit() - offset);
+                segment.get(offset, dst, done, n);
+                done += n;
+            }
+        }
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public int row(String word) {
+        byte[] key = word.getBytes(StandardCharsets.UTF_8);
+        int lo = 0;
+        int hi = size - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int cmp = compareKey(firstEntry(mid), key);
+            if (cmp < 0) {
+                lo = mid + 1;
+            } else if (cmp > 0) {
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public String word(int row) {
+        int entry = firstEntry(row);
+        byte[] bytes = new byte[keyLength(entry)];
+        keys.get(keyOffset(entry), bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public int firstYear(int row) {
+        return load(row).firstYear(0);
+    }
+
+    @Override
+    public DoubleBuffer column(int row) {
+        return load(row).column(0);
+    }
+
+    @Override
+    public DoubleBuffer totals() {
+        return DoubleBuffer.wrap(totals).asReadOnlyBuffer();
+    }
+
+    /**
+     * Returns a single-word store holding the column of ROW, reading it from the
+     * words file if it is not cached.
+     *
+     * Callers ask for the column and the first year of a row one after the other, so
+     * the row a thread loaded last is kept for that thread apart from the cache. The
+     * pair then costs one parse even if other threads evict the row in between.
+     */
+    private ColumnarStore load(int row) {
+        Loaded last = lastLoaded.get();
+        if (last != null && last.row() == row) {
+            return last.column();
+        }
+        ColumnarStore column = loadShared(row);
+        lastLoaded.set(new Loaded(row, column));
+        return column;
+    }
+
+    private ColumnarStore loadShared(int row) {
+        synchronized (cache) {
+            ColumnarStore cached = cache.get(row);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        ColumnarStore.Builder builder = new ColumnarStore.Builder();
+        for (int entry = firstEntry(row); entry < firstEntry(row + 1); entry += 1) {
+            ParallelLoader.parseChunk(readBlock(entry), builder);
+        }
+        ColumnarStore column = builder.build();
+        synchronized (cache) {
+            cache.put(row, column);
+        }
+        return column;
+    }
+
+    private byte[] readBlock(int entry) {
+        long offset = entries.getLong((long) entry * ENTRY_BYTES + 16);
+        byte[] bytes = new byte[entries.getInt((long) entry * ENTRY_BYTES + 12)];
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        try {
+            while (buffer.hasRemaining()) {
+                if (wordsChannel.read(buffer, offset + buffer.position()) < 0) {
+                    throw new EOFException("Words file is shorter than its index");
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes;
+    }
+
+    private int firstEntry(int row) {
+        return rows.getInt((long) row * Integer.BYTES);
+    }
+
+    private long keyOffset(int entry) {
+        return entries.getLong((long) entry * ENTRY_BYTES);
+    }
+
+    private int keyLength(int entry) {
+        return entries.getInt((long) entry * ENTRY_BYTES + 8);
+    }
+
+    private int compareKey(int entry, byte[] key) {
+        long offset = keyOffset(entry);
+        int length = keyLength(entry);
+        int n = Math.min(length, key.length);
+        for (int i = 0; i < n; i += 1) {
+            int cmp = Byte.compareUnsigned(keys.get(offset + i), key[i]);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return length - key.length;
+    }
+
+    /* Building the index. */
+
+    /** A block of consecutive lines of the words file that share one word. */
+    private record Block(byte[] word, long offset, int length) implements Comparable<Block> {
+        @Override
+        public int compareTo(Block other) {
+            int cmp = Arrays.compareUnsigned(word, other.word);
+            return cmp != 0 ? cmp : Long.compare(offset, other.offset);
+        }
+
+        void writeTo(DataOutputStream out) throws IOException {
+            out.writeInt(word.length);
+            out.write(word);
+            out.writeLong(offset);
+            out.writeInt(length);
+        }
+
+        static Block readFrom(DataInputStream in) throws IOException {
+            int wordLength;
+            try {
+                wordLength = in.readInt();
+            } catch (EOFException e) {
+                return null;
+            }
+            byte[] word = new byte[wordLength];
+            in.readFully(word);
+            return new Block(word, in.readLong(), in.readInt());
+        }
+    }
+
+    /**
+     * Scans WORDSFILENAME once and writes the index of its blocks to INDEXFILENAME.
+     */
+    static void buildIndex(String wordsFilename, String indexFilename) {
+        /* Recorded before the scan, so a words file that changes during it is indexed again. */
+        File wordsFile = new File(wordsFilename);
+        long wordsLength = wordsFile.length();
+        long wordsModified = wordsFile.lastModified();
+        List<Path> runs = new ArrayList<>();
+        try {
+            try (InputStream in = new BufferedInputStream(new FileInputStream(wordsFilename), 1 << 16)) {
+                List<Block> run = new ArrayList<>();
+                LineScanner scanner = new LineScanner(in);
+                byte[] word = null;
+                long blockStart = 0;
+                while (scanner.next()) {
+                    if (word == null || !scanner.wordEquals(word)) {
+                        if (word != null) {
+                            run.add(new Block(word, blockStart, (int) (scanner.lineStart - blockStart)));
+                            if (run.size() == RUN_ENTRIES) {
+                                runs.add(writeRun(run));
+                                run.clear();
+                            }
+                        }
+                        word = scanner.word();
+                        blockStart = scanner.lineStart;
+                    }
+                }
+                if (word != null) {
+                    long fileLength = new File(wordsFilename).length();
+                    run.add(new Block(word, blockStart, (int) (fileLength - blockStart)));
+                }
+                if (!run.isEmpty()) {
+                    runs.add(writeRun(run));
+                }
+            }
+            mergeRuns(runs, indexFilename, wordsLength, wordsModified);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            for (Path run : runs) {
+                run.toFile().delete();
+            }
+        }
+    }
+
+    private static Path writeRun(List<Block> run) throws IOException {
+        run.sort(null);
+        Path path = Files.createTempFile("ngram-run", ".bin");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(path.toFile()), 1 << 16))) {
+            for (Block block : run) {
+                block.writeTo(out);
+            }
+        }
+        return path;
+    }
+
+    /**
+     * Merges the sorted RUNS into the index file INDEXFILENAME of a words file of
+     * WORDSLENGTH bytes last modified at WORDSMODIFIED. The entries, rows and keys
+     * sections are written to temporary files and appended to the index once their
+     * sizes are known.
+     */
+    private static void mergeRuns(List<Path> runs, String indexFilename, long wordsLength,
+                                  long wordsModified) throws IOException {
+        Path entriesPath = Files.createTempFile("ngram-entries", ".bin");
+        Path rowsPath = Files.createTempFile("ngram-rows", ".bin");
+        Path keysPath = Files.createTempFile("ngram-keys", ".bin");
+        List<DataInputStream> inputs = new ArrayList<>();
+        try {
+            int numEntries = 0;
+            int numRows = 0;
+            long numKeyBytes = 0;
+            try (DataOutputStream entriesOut = openOutput(entriesPath);
+                 DataOutputStream rowsOut = openOutput(rowsPath);
+                 DataOutputStream keysOut = openOutput(keysPath)) {
+                PriorityQueue<RunHead> heads = new PriorityQueue<>();
+                for (Path run : runs) {
+                    DataInputStream in = new DataInputStream(new BufferedInputStream(
+                            new FileInputStream(run.toFile()), 1 << 16));
+                    inputs.add(in);
+                    RunHead head = new RunHead(in);
+                    if (head.advance()) {
+                        heads.add(head);
+                    }
+                }
+
+                byte[] previousWord = null;
+                long keyOffset = 0;
+                while (!heads.isEmpty()) {
+                    RunHead head = heads.poll();
+                    Block block = head.block;
+                    if (previousWord == null || !Arrays.equals(previousWord, block.word())) {
+                        keyOffset = numKeyBytes;
+                        keysOut.write(block.word());
+                        numKeyBytes += block.word().length;
+                        rowsOut.writeInt(numEntries);
+                        numRows += 1;
+                        previousWord = block.word();
+                    }
+                    entriesOut.writeLong(keyOffset);
+                    entriesOut.writeInt(block.word().length);
+                    entriesOut.writeInt(block.length());
+                    entriesOut.writeLong(block.offset());
+                    numEntries += 1;
+                    if (head.advance()) {
+                        heads.add(head);
+                    }
+                }
+                rowsOut.writeInt(numEntries);
+            }
+
+            try (DataOutputStream out = openOutput(Path.of(indexFilename))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(numEntries);
+                out.writeInt(numRows);
+                out.writeLong(numKeyBytes);
+                out.writeLong(wordsLength);
+                out.writeLong(wordsModified);
+                Files.copy(entriesPath, out);
+                Files.copy(rowsPath, out);
+                Files.copy(keysPath, out);
+            }
+        } finally {
+            for (DataInputStream in : inputs) {
+                in.close();
+            }
+            entriesPath.toFile().delete();
+            rowsPath.toFile().delete();
+            keysPath.toFile().delete();
+        }
+    }
+
+    private static DataOutputStream openOutput(Path path) throws IOException {
+        return new DataOutputStream(new BufferedOutputStream(new FileOutputStream(path.toFile()), 1 << 16));
+    }
+
+    /** The smallest unmerged block of one run. */
+    private static class RunHead implements Comparable<RunHead> {
+        private final DataInputStream in;
+        private Block block;
+
+        RunHead(DataInputStream in) {
+            this.in = in;
+        }
+
+        boolean advance() throws IOException {
+            block = Block.readFrom(in);
+            return block != null;
+        }
+
+        @Override
+        public int compareTo(RunHead other) {
+            return block.compareTo(other.block);
+        }
+    }
+
+    /**
+     * Reads a words file line by line, exposing the word of the current line and
+     * the file offset at which the line starts, without creating a String per line.
+     */
+    private static class LineScanner {
+        private final InputStream in;
+        private byte[] buffer = new byte[1 << 16];
+        private int start;
+        private int end;
+        private int wordEnd;
+        private int lineEnd;
+        private long lineStart;
+        private long nextLineStart;
+
+        LineScanner(InputStream in) {
+            this.in = in;
+        }
+
+        /** Advances to the next non-empty line, returning false at the end of the file. */
+        boolean next() throws IOException {
+            while (true) {
+                start = lineEnd;
+                lineStart = nextLineStart;
+                int newline = find((byte) '\n');
+                if (newline < 0) {
+                    return false;
+                }
+                lineEnd = newline + 1;
+                nextLineStart = lineStart + (lineEnd - start);
+                wordEnd = start;
+                while (wordEnd < newline && buffer[wordEnd] != '\t' && buffer[wordEnd] != '\r') {
+                    wordEnd += 1;
+                }
+                if (wordEnd > start) {
+                    return true;
+                }
+            }
+        }
+
+        boolean wordEquals(byte[] word) {
+            return Arrays.equals(buffer, start, wordEnd, word, 0, word.length);
+        }
+
+        byte[] word() {
+            return Arrays.copyOfRange(buffer, start, wordEnd);
+        }
+
+        /**
+         * Returns the index of the next B at or after START, refilling the buffer as
+         * needed. A final line without a newline is treated as if it had one.
+         */
+        private int find(byte b) throws IOException {
+            int i = start;
+            while (true) {
+                for (; i < end; i += 1) {
+                    if (buffer[i] == b) {
+                        return i;
+                    }
+                }
+                int scanned = i - start;
+                if (start > 0) {
+                    System.arraycopy(buffer, start, buffer, 0, end - start);
+                    end -= start;
+                    start = 0;
+                } else if (end == buffer.length) {
+                    buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                }
+                int read = in.read(buffer, end, buffer.length - end);
+                i = start + scanned;
+                if (read < 0) {
+                    if (end == start) {
+                        return -1;
+                    }
+                    /* Pretend the last line ends in a newline just past the data. */
+                    if (end == buffer.length) {
+                        buffer = Arrays.copyOf(buffer, buffer.length + 1);
+                    }
+                    buffer[end] = b;
+                    end += 1;
+                    return end - 1;
+                }
+                end += read;
+            }
+        }
+    }
+}
@@ -8,7 +8,7 @@ import java.util.*;
  *
  * @author Josh Hug
  */
-public class TimeSeries extends TreeMap<Integer, Double> {
+public class TimeSeries extends TreeMap<Integer, Double> implements YearSeries {
 
     /** If it helps speed up your code, you can assume year arguments to your NGramMap
      * are between 1400 and 2100. We've stored these values as the constants
@@ -32,16 +32,15 @@ public class TimeSeries extends TreeMap<Integer, Double> {
         if (ts == null) {
             throw new IllegalArgumentException();
         }
-        for (int year : ts.keySet()) {
-            if (year >= startYear && year <= endYear) {
-                put(year, ts.get(year));
-            }
+        if (startYear <= endYear) {
+            putAll(ts.subMap(startYear, true, endYear, true));
         }
     }
 
     /**
      *  Returns all years for this time series in ascending order.
      */
+    @Override
     public List<Integer> years() {
         return new ArrayList<>(keySet());
     }
@@ -50,6 +49,7 @@ public class TimeSeries extends TreeMap<Integer, Double> {
      *  Returns all data for this time series. Must correspond to the
      *  order of years().
      */
+    @Override
     public List<Double> data() {
         List<Double> list = new ArrayList<>();
         for (int year : years()) {
@@ -72,27 +72,10 @@ public class TimeSeries extends TreeMap<Integer, Double> {
             throw new IllegalArgumentException();
         }
 
-        Set<Integer> years1 = this.keySet();
-        Set<Integer> years2 = ts.keySet();
-
-        Set<Integer> intersection = new HashSet<>(years1);
-        intersection.retainAll(years2);
-
-        Set<Integer> onlyInYears1 = new HashSet<>(years1);
-        onlyInYears1.removeAll(years2);
-
-        Set<Integer> onlyInYears2 = new HashSet<>(years2);
-        onlyInYears2.removeAll(years1);
-
         TimeSeries sum = new TimeSeries();
-        for (int year : intersection) {
-            sum.put(year, this.get(year) + ts.get(year));
-        }
-        for (int year : onlyInYears1) {
-            sum.put(year, this.get(year));
-        }
-        for (int year : onlyInYears2) {
-            sum.put(year, ts.get(year));
+        sum.putAll(this);
+        for (Map.Entry<Integer, Double> entry : ts.entrySet()) {
+            sum.merge(entry.getKey(), entry.getValue(), Double::sum);
         }
         return sum;
     }
@@ -111,20 +94,96 @@ public class TimeSeries extends TreeMap<Integer, Double> {
             throw new IllegalArgumentException();
         }
 
-        Set<Integer> years1 = this.keySet();
-        Set<Integer> years2 = ts.keySet();
+        TimeSeries quotient = new TimeSeries();
+        for (Map.Entry<Integer, Double> entry : entrySet()) {
+            Double divisor = ts.get(entry.getKey());
+            if (divisor == null) {
+                throw new IllegalArgumentException();
+            }
+            quotient.put(entry.getKey(), entry.getValue() / divisor);
+        }
+        return quotient;
+    }
 
-        Set<Integer> intersection = new HashSet<>(years1);
-        intersection.retainAll(years2);
+    /**
+     * Returns the trailing moving average of this TimeSeries over WINDOW years: the value
+     * for each year is the mean of the data for the years in the WINDOW years ending at
+     * that year, counting only years that hold data. Runs in a single pass over the years.
+     */
+    public TimeSeries movingAverage(int window) {
+        if (window < 1) {
+            throw new IllegalArgumentException("Window must be at least one year: " + window);
+        }
+        int[] years = new int[size()];
+        double[] values = new double[size()];
+        TimeSeries average = new TimeSeries();
+        int oldest = 0;
+        int n = 0;
+        double sum = 0;
+        for (Map.Entry<Integer, Double> entry : entrySet()) {
+            int year = entry.getKey();
+            years[n] = year;
+            values[n] = entry.getValue();
+            sum += values[n];
+            n += 1;
+            while (years[oldest] <= year - window) {
+                sum -= values[oldest];
+                oldest += 1;
+            }
+            average.put(year, sum / (n - oldest));
+        }
+        return average;
+    }
 
-        if (!intersection.equals(years1)) {
-            throw new IllegalArgumentException();
+    /**
+     * Returns the exponentially weighted moving average of this TimeSeries with smoothing
+     * factor ALPHA, which must be in (0, 1]. The value for the first year is its data, and
+     * the value for each later year is ALPHA times its data plus 1 - ALPHA times the value
+     * for the previous year holding data.
+     */
+    public TimeSeries ewma(double alpha) {
+        if (!(alpha > 0 && alpha <= 1)) {
+            throw new IllegalArgumentException("Smoothing factor must be in (0, 1]: " + alpha);
         }
+        TimeSeries smoothed = new TimeSeries();
+        Double previous = null;
+        for (Map.Entry<Integer, Double> entry : entrySet()) {
+            double value = previous == null
+                    ? entry.getValue() : alpha * entry.getValue() + (1 - alpha) * previous;
+            smoothed.put(entry.getKey(), value);
+            previous = value;
+        }
+        return smoothed;
+    }
 
-        TimeSeries quotient = new TimeSeries();
-        for (Integer year : intersection) {
-            quotient.put(year, this.get(year) / ts.get(year));
+    /**
+     * Returns the change of this TimeSeries from one year to the next: the value for each
+     * year but the first is its data minus the data for the previous year holding data.
+     * The first year has no previous year, so it is not in the result.
+     */
+    public TimeSeries diff() {
+        TimeSeries delta = new TimeSeries();
+        Double previous = null;
+        for (Map.Entry<Integer, Double> entry : entrySet()) {
+            if (previous != null) {
+                delta.put(entry.getKey(), entry.getValue() - previous);
+            }
+            previous = entry.getValue();
         }
-        return quotient;
+        return delta;
+    }
+
+    /**
+     * Returns the running total of this TimeSeries: the value for each year is the sum of
+     * the data for that year and all earlier years.
+     */
+    public TimeSeries cumulativeSum() {
+        TimeSeries total = new TimeSeries();
+        double sum = 0;
+        for (Map.Entry<Integer, Double> entry : entrySet()) {
+            sum += entry.getValue();
+            total.put(entry.getKey(), sum);
+        }
+        return total;
     }
 }
@@ -0,0 +1,175 @@
+package ngrams;
+
+import java.nio.DoubleBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A read-only window onto a column of an NGramStore between two years. Creating a
+ * view copies nothing: every query reads straight from the store, so a view is as
+ * safe to hand out as a defensive copy but costs a few fields instead of a tree.
+ * Callers that need to modify the data ask for toTimeSeries(), which is the only
+ * place a copy is made.
+ *
+ * A view may also divide its column by a second column year by year, which is how
+ * NGramMap serves relative frequencies without materializing them.
+ */
+public final class TimeSeriesView implements YearSeries {
+    private static final TimeSeriesView EMPTY =
+            new TimeSeriesView(DoubleBuffer.allocate(0), 0, 0, -1, null, 0);
+
+    private final DoubleBuffer column;
+    private final int firstYear;
+    private final int startYear;
+    private final int endYear;
+    private final DoubleBuffer divisor;
+    private final int divisorFirstYear;
+
+    private TimeSeriesView(DoubleBuffer column, int firstYear, int startYear, int endYear,
+                           DoubleBuffer divisor, int divisorFirstYear) {
+        this.column = column;
+        this.firstYear = firstYear;
+        this.startYear = Math.max(startYear, firstYear);
+        this.endYear = Math.min(endYear, firstYear + column.limit() - 1);
+        this.divisor = divisor;
+        this.divisorFirstYear = divisorFirstYear;
+    }
+
+    /**
+     * Returns a view of COLUMN between STARTYEAR and ENDYEAR inclusive. Index 0 of
+     * COLUMN holds the value for FIRSTYEAR and NaN entries mark years without data.
+     */
+    static TimeSeriesView of(DoubleBuffer column, int firstYear, int startYear, int endYear) {
+        return new TimeSeriesView(column, firstYear, startYear, endYear, null, 0);
+    }
+
+    /** Returns a view with no data. */
+    static TimeSeriesView empty() {
+        return EMPTY;
+    }
+
+    /**
+     * Returns a view of the year-wise quotient of this view divided by DIVISOR,
+     * whose index 0 holds the value for DIVISORFIRSTYEAR. Throws an
+     * IllegalArgumentException if DIVISOR has no data for a year this view holds.
+     */
+    TimeSeriesView dividedBy(DoubleBuffer divisor, int divisorFirstYear) {
+        TimeSeriesView quotient = new TimeSeriesView(column, firstYear, startYear, endYear,
+                divisor, divisorFirstYear);
+        for (int year = startYear; year <= endYear; year += 1) {
+            if (quotient.rawValue(year) == null) {
+                continue;
+            }
+            int index = year - divisorFirstYear;
+            if (index < 0 || index >= divisor.limit() || Double.isNaN(divisor.get(index))) {
+                throw new IllegalArgumentException("No data for year " + year);
+            }
+        }
+        return quotient;
+    }
+
+    /**
+     * Returns the data for YEAR, or null if this view holds no data for YEAR.
+     */
+    public Double get(int year) {
+        Double value = rawValue(year);
+        if (value == null || divisor == null) {
+            return value;
+        }
+        return value / divisor.get(year - divisorFirstYear);
+    }
+
+    /** Returns true if this view holds data for YEAR. */
+    public boolean containsYear(int year) {
+        return rawValue(year) != null;
+    }
+
+    /** Returns the number of years holding data. */
+    public int size() {
+        int size = 0;
+        for (int year = startYear; year <= endYear; year += 1) {
+            if (!Double.isNaN(column.get(year - firstYear))) {
+                size += 1;
+            }
+        }
+        return size;
+    }
+
+    /** Returns true if no year holds data. */
+    public boolean isEmpty() {
+        for (int year = startYear; year <= endYear; year += 1) {
+            if (!Double.isNaN(column.get(year - firstYear))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public List<Integer> years() {
+        List<Integer> years = new ArrayList<>();
+        for (int year = startYear; year <= endYear; year += 1) {
+            if (!Double.isNaN(column.get(year - firstYear))) {
+                years.add(year);
+            }
+        }
+        return years;
+    }
+
+    @Override
+    public List<Double> data() {
+        List<Double> data = new ArrayList<>();
+        for (int year = startYear; year <= endYear; year += 1) {
+            if (!Double.isNaN(column.get(year - firstYear))) {
+                data.add(value(year));
+            }
+        }
+        return data;
+    }
+
+    /**
+     * Returns a new, modifiable TimeSeries holding the data of this view.
+     */
+    public TimeSeries toTimeSeries() {
+        TimeSeries ts = new TimeSeries();
+        for (int year = startYear; year <= endYear; year += 1) {
+            if (!Double.isNaN(column.get(year - firstYear))) {
+                ts.put(year, value(year));
+            }
+        }
+        return ts;
+    }
+
+    /**
+     * Returns the data in the same format as TimeSeries.toString(), e.g.
+     * "{2006=1.5, 2007=2.0}".
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("{");
+        for (int year = startYear; year <= endYear; year += 1) {
+            if (!Double.isNaN(column.get(year - firstYear))) {
+                if (sb.length() > 1) {
+                    sb.append(", ");
+                }
+                sb.append(year).append('=').append(value(year));
+            }
+        }
+        return sb.append('}').toString();
+    }
+
+    /** Returns the undivided value for YEAR, or null if there is none. */
+    private Double rawValue(int year) {
+        if (year < startYear || year > endYear) {
+            return null;
+        }
+        double value = column.get(year - firstYear);
+        return Double.isNaN(value) ? null : value;
+    }
+
+    /** Returns the value for YEAR, which must hold data. */
+    private double value(int year) {
+        double value = column.get(year - firstYear);
+        return divisor == null ? value : value / divisor.get(year - divisorFirstYear);
+    }
+}
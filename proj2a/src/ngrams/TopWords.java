@@ -0,0 +1,150 @@
+package ngrams;
+
+import java.nio.DoubleBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+import static ngrams.TimeSeries.MAX_YEAR;
+import static ngrams.TimeSeries.MIN_YEAR;
+
+/**
+ * Answers "the K words with the highest total count between two years" without
+ * scoring every word.
+ *
+ * For every year, the rows holding data in that year are kept sorted by their
+ * count in that year, highest first. A query walks the lists of the years in its
+ * range in parallel, one depth at a time (Fagin's threshold algorithm): every row
+ * met is scored exactly by summing its column over the range, and the sum of the
+ * counts at the current depth bounds the score of every row not met yet. As soon
+ * as K rows score at least that bound, no unseen row can enter the result.
+ */
+class TopWords {
+    private final NGramStore store;
+    private final int[][] rowsByYear;
+    private final double[][] countsByYear;
+
+    TopWords(NGramStore store) {
+        this.store = store;
+        int numYears = MAX_YEAR - MIN_YEAR + 1;
+        int[] sizes = new int[numYears];
+        for (int row = 0; row < store.size(); row += 1) {
+            DoubleBuffer column = store.column(row);
+            int offset = store.firstYear(row) - MIN_YEAR;
+            for (int i = 0; i < column.limit(); i += 1) {
+                if (!Double.isNaN(column.get(i)) && inRange(offset + i)) {
+                    sizes[offset + i] += 1;
+                }
+            }
+        }
+
+        int[][] rows = new int[numYears][];
+        double[][] counts = new double[numYears][];
+        for (int y = 0; y < numYears; y += 1) {
+            rows[y] = new int[sizes[y]];
+            counts[y] = new double[sizes[y]];
+            sizes[y] = 0;
+        }
+        for (int row = 0; row < store.size(); row += 1) {
+            DoubleBuffer column = store.column(row);
+            int offset = store.firstYear(row) - MIN_YEAR;
+            for (int i = 0; i < column.limit(); i += 1) {
+                int y = offset + i;
+                if (!Double.isNaN(column.get(i)) && inRange(y)) {
+                    rows[y][sizes[y]] = row;
+                    counts[y][sizes[y]] = column.get(i);
+                    sizes[y] += 1;
+                }
+            }
+        }
+
+        rowsByYear = new int[numYears][];
+        countsByYear = new double[numYears][];
+        for (int y = 0; y < numYears; y += 1) {
+            double[] yearCounts = counts[y];
+            Integer[] order = new Integer[yearCounts.length];
+            for (int i = 0; i < order.length; i += 1) {
+                order[i] = i;
+            }
+            Arrays.sort(order, (a, b) -> Double.compare(yearCounts[b], yearCounts[a]));
+            rowsByYear[y] = new int[order.length];
+            countsByYear[y] = new double[order.length];
+            for (int i = 0; i < order.length; i += 1) {
+                rowsByYear[y][i] = rows[y][order[i]];
+                countsByYear[y][i] = yearCounts[order[i]];
+            }
+            rows[y] = null;
+            counts[y] = null;
+        }
+    }
+
+    /** A row and its total count over the queried range. */
+    record Scored(int row, double score) {
+    }
+
+    /**
+     * Returns the K rows with the highest total count between STARTYEAR and ENDYEAR,
+     * inclusive, highest first. Ties are broken by row.
+     */
+    List<Scored> top(int startYear, int endYear, int k) {
+        int from = Math.max(startYear, MIN_YEAR) - MIN_YEAR;
+        int to = Math.min(endYear, MAX_YEAR) - MIN_YEAR;
+        Comparator<Scored> order = Comparator.comparingDouble(Scored::score)
+                .thenComparing(Comparator.comparingInt(Scored::row).reversed());
+        PriorityQueue<Scored> best = new PriorityQueue<>(order);
+        if (k <= 0 || from > to) {
+            return new ArrayList<>();
+        }
+
+        Set<Integer> seen = new HashSet<>();
+        for (int depth = 0; ; depth += 1) {
+            double threshold = 0;
+            boolean exhausted = true;
+            for (int y = from; y <= to; y += 1) {
+                if (depth >= rowsByYear[y].length) {
+                    continue;
+                }
+                exhausted = false;
+                threshold += countsByYear[y][depth];
+                int row = rowsByYear[y][depth];
+                if (seen.add(row)) {
+                    best.add(new Scored(row, score(row, startYear, endYear)));
+                    if (best.size() > k) {
+                        best.poll();
+                    }
+                }
+            }
+            if (exhausted || (best.size() == k && best.peek().score() >= threshold)) {
+                break;
+            }
+        }
+
+        List<Scored> result = new ArrayList<>(best);
+        result.sort(order.reversed());
+        return result;
+    }
+
+    /** Returns the sum of the counts of ROW between STARTYEAR and ENDYEAR. */
+    private double score(int row, int startYear, int endYear) {
+        DoubleBuffer column = store.column(row);
+        int firstYear = store.firstYear(row);
+        int from = Math.max(startYear, firstYear) - firstYear;
+        int to = Math.min(endYear, firstYear + column.limit() - 1) - firstYear;
+        double score = 0;
+        for (int i = from; i <= to; i += 1) {
+            double count = column.get(i);
+            if (!Double.isNaN(count)) {
+                score += count;
+            }
+        }
+        return score;
+    }
+
+    private static boolean inRange(int yearIndex) {
+        return yearIndex >= 0 && yearIndex <= MAX_YEAR - MIN_YEAR;
+    }
+}
@@ -0,0 +1,178 @@
+package ngrams;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * A dictionary that assigns every distinct word a dense int id, starting at 0 in
+ * order of insertion. The text of all words is stored back to back as UTF-8 in a
+ * single byte array, and ids are found through an open-addressing hash table of
+ * ints, so a vocabulary of n words costs a handful of arrays instead of n String
+ * objects and n hash map entries.
+ *
+ * Words can be added and looked up directly from UTF-8 bytes, which lets a loader
+ * intern the words of a file without creating a String per line.
+ */
+public class Vocabulary {
+    private byte[] arena;
+    private int arenaSize;
+    private int[] offsets;
+    private int[] hashes;
+    private int size;
+    /** Holds id + 1 for every occupied slot, and 0 for empty slots. */
+    private int[] table;
+
+    /**
+     * Constructs an empty Vocabulary.
+     */
+    public Vocabulary() {
+        this(16, 128);
+    }
+
+    private Vocabulary(int capacity, int arenaCapacity) {
+        arena = new byte[arenaCapacity];
+        offsets = new int[capacity + 1];
+        hashes = new int[capacity];
+        table = new int[tableSizeFor(capacity)];
+    }
+
+    /** Returns the number of words in this vocabulary. */
+    public int size() {
+        return size;
+    }
+
+    /** Returns the id of WORD, or -1 if it is not in this vocabulary. */
+    public int id(String word) {
+        byte[] bytes = word.getBytes(StandardCharsets.UTF_8);
+        return id(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Returns the id of the word whose UTF-8 encoding is BYTES[FROM] to BYTES[TO - 1],
+     * or -1 if it is not in this vocabulary.
+     */
+    public int id(byte[] bytes, int from, int to) {
+        int hash = hash(bytes, from, to);
+        int mask = table.length - 1;
+        for (int slot = hash & mask; table[slot] != 0; slot = (slot + 1) & mask) {
+            int id = table[slot] - 1;
+            if (hashes[id] == hash && equals(id, bytes, from, to)) {
+                return id;
+            }
+        }
+        return -1;
+    }
+
+    /** Returns the id of WORD, adding it to this vocabulary if needed. */
+    public int add(String word) {
+        byte[] bytes = word.getBytes(StandardCharsets.UTF_8);
+        return add(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Returns the id of the word whose UTF-8 encoding is BYTES[FROM] to BYTES[TO - 1],
+     * adding it to this vocabulary if needed.
+     */
+    public int add(byte[] bytes, int from, int to) {
+        int hash = hash(bytes, from, to);
+        int mask = table.length - 1;
+        int slot = hash & mask;
+        for (; table[slot] != 0; slot = (slot + 1) & mask) {
+            int id = table[slot] - 1;
+            if (hashes[id] == hash && equals(id, bytes, from, to)) {
+                return id;
+            }
+        }
+
+        int id = size;
+        int length = to - from;
+        if (id == hashes.length) {
+            /* A compacted empty vocabulary has no room at all. */
+            int capacity = Math.max(1, id * 2);
+            offsets = Arrays.copyOf(offsets, capacity + 1);
+            hashes = Arrays.copyOf(hashes, capacity);
+        }
+        if (arenaSize + length > arena.length) {
+            arena = Arrays.copyOf(arena, Math.max(arena.length * 2, arenaSize + length));
+        }
+        System.arraycopy(bytes, from, arena, arenaSize, length);
+        arenaSize += length;
+        hashes[id] = hash;
+        offsets[id + 1] = arenaSize;
+        size += 1;
+
+        table[slot] = id + 1;
+        if (size * 2 > table.length) {
+            rehash(table.length * 2);
+        }
+        return id;
+    }
+
+    /**
+     * Returns the id of the word with id OTHERID in OTHER, adding it to this vocabulary
+     * if needed. The word is copied as bytes, without decoding it.
+     */
+    public int add(Vocabulary other, int otherId) {
+        other.checkId(otherId);
+        return add(other.arena, other.offsets[otherId], other.offsets[otherId + 1]);
+    }
+
+    /** Returns the word with id ID. */
+    public String word(int id) {
+        checkId(id);
+        return new String(arena, offsets[id], offsets[id + 1] - offsets[id], StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Returns true if the word with id ID is encoded as BYTES[FROM] to BYTES[TO - 1].
+     */
+    public boolean equals(int id, byte[] bytes, int from, int to) {
+        return Arrays.equals(arena, offsets[id], offsets[id + 1], bytes, from, to);
+    }
+
+    /**
+     * Returns a copy of this vocabulary whose arrays are trimmed to its size.
+     */
+    public Vocabulary compact() {
+        Vocabulary copy = new Vocabulary(size, arenaSize);
+        System.arraycopy(arena, 0, copy.arena, 0, arenaSize);
+        System.arraycopy(offsets, 0, copy.offsets, 0, size + 1);
+        System.arraycopy(hashes, 0, copy.hashes, 0, size);
+        copy.arenaSize = arenaSize;
+        copy.size = size;
+        copy.rehash(tableSizeFor(size));
+        return copy;
+    }
+
+    private void rehash(int tableSize) {
+        table = new int[tableSize];
+        int mask = tableSize - 1;
+        for (int id = 0; id < size; id += 1) {
+            int slot = hashes[id] & mask;
+            while (table[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = id + 1;
+        }
+    }
+
+    private void checkId(int id) {
+        if (id < 0 || id >= size) {
+            throw new IndexOutOfBoundsException("No word with id " + id);
+        }
+    }
+
+    /** Returns the smallest power of two that keeps CAPACITY words at most half full. */
+    private static int tableSizeFor(int capacity) {
+        return Math.max(16, Integer.highestOneBit(Math.max(1, capacity) * 2 - 1) * 2);
+    }
+
+    /** FNV-1a over the bytes, followed by a final mix so that low bits are well spread. */
+    private static int hash(byte[] bytes, int from, int to) {
+        int h = 0x811C9DC5;
+        for (int i = from; i < to; i += 1) {
+            h = (h ^ bytes[i]) * 0x01000193;
+        }
+        return h ^ (h >>> 16);
+    }
+}
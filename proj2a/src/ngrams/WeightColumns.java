@@ -0,0 +1,66 @@
+package ngrams;
+
+import java.nio.DoubleBuffer;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.stream.IntStream;
+
+import static ngrams.TimeSeries.MIN_YEAR;
+
+/**
+ * Memoized relative frequency columns of an NGramStore. The weight column of a row
+ * has the same first year and length as its count column, and holds each count
+ * divided by the total count of the same year.
+ */
+class WeightColumns {
+    /** Marks a row whose counts include a year without a total count. */
+    private static final double[] UNAVAILABLE = new double[0];
+
+    private final NGramStore store;
+    private final AtomicReferenceArray<double[]> columns;
+
+    /**
+     * Creates the weight columns of STORE. If EAGER, every column is computed now,
+     * in parallel; otherwise columns are computed on first use.
+     */
+    WeightColumns(NGramStore store, boolean eager) {
+        this.store = store;
+        this.columns = new AtomicReferenceArray<>(store.size());
+        if (eager) {
+            IntStream.range(0, store.size()).parallel().forEach(this::column);
+        }
+    }
+
+    /**
+     * Returns the weight column of ROW, or null if some year of its counts has no
+     * total count (in which case weights must be computed on the fly, which reports
+     * the missing year).
+     */
+    DoubleBuffer column(int row) {
+        double[] column = columns.get(row);
+        if (column == null) {
+            column = compute(row);
+            columns.set(row, column);
+        }
+        return column == UNAVAILABLE ? null : DoubleBuffer.wrap(column).asReadOnlyBuffer();
+    }
+
+    private double[] compute(int row) {
+        DoubleBuffer counts = store.column(row);
+        DoubleBuffer totals = store.totals();
+        int firstYear = store.firstYear(row);
+        double[] weights = new double[counts.limit()];
+        for (int i = 0; i < weights.length; i += 1) {
+            double count = counts.get(i);
+            if (Double.isNaN(count)) {
+                weights[i] = Double.NaN;
+                continue;
+            }
+            int index = firstYear + i - MIN_YEAR;
+            if (index < 0 || index >= totals.limit() || Double.isNaN(totals.get(index))) {
+                return UNAVAILABLE;
+            }
+            weights[i] = count / totals.get(index);
+        }
+        return weights;
+    }
+}
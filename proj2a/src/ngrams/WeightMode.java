@@ -0,0 +1,21 @@
+package ngrams;
+
+/**
+ * How an NGramMap computes relative frequencies (weights).
+ */
+public enum WeightMode {
+    /** Divide counts by total counts on every query. Uses no extra memory. */
+    ON_THE_FLY,
+
+    /**
+     * Compute the weight column of a word the first time it is queried and keep it.
+     * Memory grows with the number of distinct words queried.
+     */
+    LAZY,
+
+    /**
+     * Compute the weight columns of every word when the NGramMap is created. Doubles
+     * the memory used by counts, but every weight query is a plain slice read.
+     */
+    PRECOMPUTED
+}
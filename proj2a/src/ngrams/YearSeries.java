@@ -0,0 +1,15 @@
+package ngrams;
+
+import java.util.List;
+
+/**
+ * Numerical data indexed by year, as consumed by plotting and text output.
+ */
+public interface YearSeries {
+
+    /** Returns all years holding data in ascending order. */
+    List<Integer> years();
+
+    /** Returns all data, in the order of years(). */
+    List<Double> data();
+}
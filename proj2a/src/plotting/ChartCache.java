@@ -0,0 +1,151 @@
+package plotting;
+
+import ngrams.YearSeries;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded cache of encoded charts, keyed by a hash of the labels and data they plot.
+ * Unlike a cache of responses keyed by query, it keeps serving a chart after the data
+ * is reloaded or appended to, as long as the series plotted are unchanged, and serves
+ * one chart to different queries that plot the same series. Entries are evicted in
+ * least recently used order once their total size exceeds a byte budget.
+ */
+public class ChartCache {
+    /** Approximate bytes taken by an entry besides its encoded chart. */
+    private static final int ENTRY_OVERHEAD = 160;
+
+    private final long maxBytes;
+    private final LinkedHashMap<ByteBuffer, String> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long bytes;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /** Constructs a cache holding at most MAXBYTES bytes of charts. A MAXBYTES of 0 disables caching. */
+    public ChartCache(long maxBytes) {
+        if (maxBytes < 0) {
+            throw new IllegalArgumentException();
+        }
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Returns the key of the chart plotting each series of LTS under the label at the same
+     * index of LABELS: a SHA-256 hash of the labels, years and values, so that charts of
+     * different series practically never share a key.
+     */
+    public static ByteBuffer key(List<String> labels, List<? extends YearSeries> lts) {
+        if (labels.size() != lts.size()) {
+            throw new IllegalArgumentException("List of labels and List of time series objects must be the same length");
+        }
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(1 << 12);
+        for (int i = 0; i < labels.size(); i += 1) {
+            byte[] label = labels.get(i).getBytes(StandardCharsets.UTF_8);
+            List<Integer> years = lts.get(i).years();
+            List<Double> data = lts.get(i).data();
+            buffer.putInt(label.length).putInt(years.size());
+            flush(digest, buffer);
+            digest.update(label);
+            for (int j = 0; j < years.size(); j += 1) {
+                if (buffer.remaining() < Integer.BYTES + Double.BYTES) {
+                    flush(digest, buffer);
+                }
+                buffer.putInt(years.get(j)).putDouble(data.get(j));
+            }
+            flush(digest, buffer);
+        }
+        return ByteBuffer.wrap(digest.digest());
+    }
+
+    private static void flush(MessageDigest digest, ByteBuffer buffer) {
+        digest.update(buffer.array(), 0, buffer.position());
+        buffer.clear();
+    }
+
+    /** Returns the encoded chart stored under KEY, or null if there is none. */
+    public String get(ByteBuffer key) {
+        synchronized (entries) {
+            String chart = entries.get(key);
+            if (chart == null) {
+                misses.incrementAndGet();
+            } else {
+                hits.incrementAndGet();
+            }
+            return chart;
+        }
+    }
+
+    /**
+     * Stores the encoded CHART under KEY, then evicts the least recently used entries
+     * until the cache fits its budget. A chart larger than the whole budget is not stored.
+     */
+    public void put(ByteBuffer key, String chart) {
+        long size = sizeOf(chart);
+        if (size > maxBytes) {
+            return;
+        }
+        synchronized (entries) {
+            String replaced = entries.put(key, chart);
+            if (replaced != null) {
+                bytes -= sizeOf(replaced);
+            }
+            bytes += size;
+            Iterator<Map.Entry<ByteBuffer, String>> eldest = entries.entrySet().iterator();
+            while (bytes > maxBytes) {
+                bytes -= sizeOf(eldest.next().getValue());
+                eldest.remove();
+                evictions.incrementAndGet();
+            }
+        }
+    }
+
+    /** Returns the number of lookups that found a chart. */
+    public long hits() {
+        return hits.get();
+    }
+
+    /** Returns the number of lookups that found no chart. */
+    public long misses() {
+        return misses.get();
+    }
+
+    /** Returns the number of entries evicted to stay within the byte budget. */
+    public long evictions() {
+        return evictions.get();
+    }
+
+    /** Returns the number of charts currently stored. */
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    /** Returns the approximate number of bytes currently stored. */
+    public long bytes() {
+        synchronized (entries) {
+            return bytes;
+        }
+    }
+
+    /** Returns the approximate heap size of an entry holding CHART, stored one byte per char. */
+    private static long sizeOf(String chart) {
+        return ENTRY_OVERHEAD + chart.length();
+    }
+}
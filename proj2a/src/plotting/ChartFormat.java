@@ -0,0 +1,29 @@
+package plotting;
+
+import java.util.Locale;
+
+/** The forms a chart response can take, named in a query by a short format string. */
+public enum ChartFormat {
+    /** A Base64-encoded PNG image rendered by XChart. */
+    PNG,
+    /** An SVG document drawing each series as one path, downsampled to the plot width. */
+    SVG,
+    /** A JSON list of the years and values of each series, downsampled for long series. */
+    POINTS;
+
+    /**
+     * Returns the ChartFormat named by SPEC, ignoring case: "png", "svg" or "points". A
+     * null or blank SPEC means PNG. Throws an IllegalArgumentException for any other SPEC.
+     */
+    public static ChartFormat parse(String spec) {
+        if (spec == null || spec.isBlank()) {
+            return PNG;
+        }
+        return switch (spec.trim().toLowerCase(Locale.ROOT)) {
+            case "png" -> PNG;
+            case "svg" -> SVG;
+            case "points" -> POINTS;
+            default -> throw new IllegalArgumentException("Unknown chart format: " + spec);
+        };
+    }
+}
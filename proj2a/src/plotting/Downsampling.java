@@ -0,0 +1,70 @@
+package plotting;
+
+/**
+ * Reduces a series to fewer points that still look the same when plotted, with the
+ * Largest-Triangle-Three-Buckets algorithm (Steinarsson, 2013). The first and last
+ * points are kept; the points between are split into equal buckets, and from each
+ * bucket the point forming the largest triangle with the point kept from the bucket
+ * before and the mean of the bucket after is kept. Peaks and troughs survive, which
+ * taking every n-th point or averaging buckets would flatten.
+ */
+public class Downsampling {
+    private Downsampling() {
+    }
+
+    /**
+     * Returns the indices, in increasing order, of at most THRESHOLD points of the series
+     * with X coordinates X and Y coordinates Y, where X is increasing. Returns every index
+     * if the series has no more than THRESHOLD points. Throws an IllegalArgumentException
+     * if THRESHOLD is less than 3 or X and Y differ in length.
+     */
+    public static int[] lttb(double[] x, double[] y, int threshold) {
+        if (threshold < 3) {
+            throw new IllegalArgumentException("Need to keep at least 3 points: " + threshold);
+        }
+        if (x.length != y.length) {
+            throw new IllegalArgumentException("x and y must be the same length");
+        }
+        int n = x.length;
+        int[] kept = new int[Math.min(n, threshold)];
+        if (n <= threshold) {
+            for (int i = 0; i < n; i += 1) {
+                kept[i] = i;
+            }
+            return kept;
+        }
+
+        double bucketSize = (double) (n - 2) / (threshold - 2);
+        int previous = 0;
+        for (int bucket = 0; bucket < threshold - 2; bucket += 1) {
+            /* The mean of the next bucket, or the last point for the last bucket. */
+            int nextStart = (int) ((bucket + 1) * bucketSize) + 1;
+            int nextEnd = Math.min((int) ((bucket + 2) * bucketSize) + 1, n);
+            double meanX = 0;
+            double meanY = 0;
+            for (int i = nextStart; i < nextEnd; i += 1) {
+                meanX += x[i];
+                meanY += y[i];
+            }
+            meanX /= nextEnd - nextStart;
+            meanY /= nextEnd - nextStart;
+
+            int start = (int) (bucket * bucketSize) + 1;
+            int end = (int) ((bucket + 1) * bucketSize) + 1;
+            int best = start;
+            double bestArea = -1;
+            for (int i = start; i < end; i += 1) {
+                double area = Math.abs((x[previous] - meanX) * (y[i] - y[previous])
+                        - (x[previous] - x[i]) * (meanY - y[previous]));
+                if (area > bestArea) {
+                    bestArea = area;
+                    best = i;
+                }
+            }
+            kept[bucket + 1] = best;
+            previous = best;
+        }
+        kept[threshold - 1] = n - 1;
+        return kept;
+    }
+}
@@ -0,0 +1,132 @@
+package plotting;
+
+import utils.LatencyHistogram;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * A fixed number of threads that render charts, with a bounded queue of renders waiting
+ * for one. A render submitted while the queue is full is refused at once instead of
+ * queued, so a burst of chart requests cannot pile up behind the renderers and tie up
+ * the threads that serve cheaper requests; the caller can answer with something cheaper
+ * to compute instead.
+ *
+ * The pool records how long renders wait in the queue and how long they take, so the
+ * two causes of a slow chart can be told apart.
+ */
+public class RenderPool implements AutoCloseable {
+    private final ThreadPoolExecutor executor;
+
+    private final AtomicLong rendered = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final LatencyHistogram queueWait = new LatencyHistogram();
+    private final LatencyHistogram renderTime = new LatencyHistogram();
+
+    /** Constructs a RenderPool with one thread per core and a queue four times as long. */
+    public RenderPool() {
+        this(Runtime.getRuntime().availableProcessors(), 4 * Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Constructs a RenderPool of THREADS threads that holds at most MAXQUEUED renders
+     * waiting for a thread.
+     */
+    public RenderPool(int threads, int maxQueued) {
+        if (threads < 1 || maxQueued < 1) {
+            throw new IllegalArgumentException("Need at least one thread and one queue slot");
+        }
+        ThreadFactory factory = Thread.ofPlatform().name("ngordnet-render-", 0).daemon().factory();
+        executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(maxQueued), factory);
+    }
+
+    /**
+     * Runs RENDER on a thread of this pool and returns its result, waiting for it. Returns
+     * null at once if the queue is full, and also if this thread is interrupted while it
+     * waits, in which case the render is cancelled and the interrupt status is kept. An
+     * exception thrown by RENDER is rethrown.
+     */
+    public String render(Supplier<String> render) {
+        long submitted = System.nanoTime();
+        Future<String> result;
+        try {
+            result = executor.submit(() -> {
+                long started = System.nanoTime();
+                queueWait.record(started - submitted);
+                try {
+                    return render.get();
+                } finally {
+                    renderTime.record(System.nanoTime() - started);
+                    rendered.incrementAndGet();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            rejected.incrementAndGet();
+            return null;
+        }
+        try {
+            return result.get();
+        } catch (InterruptedException e) {
+            result.cancel(true);
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            if (e.getCause() instanceof Error cause) {
+                throw cause;
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /** Returns the number of renders that ran to completion or failed. */
+    public long rendered() {
+        return rendered.get();
+    }
+
+    /** Returns the number of renders refused because the queue was full. */
+    public long rejected() {
+        return rejected.get();
+    }
+
+    /** Returns the total time renders have spent waiting in the queue, in nanoseconds. */
+    public long queueWaitNanos() {
+        return queueWait.sum();
+    }
+
+    /** Returns the total time renders have spent running, in nanoseconds. */
+    public long renderNanos() {
+        return renderTime.sum();
+    }
+
+    /** Returns the histogram of the times renders have waited in the queue. */
+    public LatencyHistogram queueWait() {
+        return queueWait;
+    }
+
+    /** Returns the histogram of the times renders have taken to run. */
+    public LatencyHistogram renderTime() {
+        return renderTime;
+    }
+
+    /** Returns the number of renders waiting in the queue. */
+    public int queued() {
+        return executor.getQueue().size();
+    }
+
+    /** Stops the threads of this pool once the renders already accepted are done. */
+    @Override
+    public void close() {
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,138 @@
+package utils;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A histogram of durations in nanoseconds with a bounded relative error, in the style
+ * of HdrHistogram. Durations below 16 ns each have their own bucket; above that, every
+ * power of two is split into 16 equal buckets, so a recorded duration is known to within
+ * 1/16 of its value. Durations of 2^40 ns (about 18 minutes) or more count as 2^40 - 1.
+ *
+ * Recording is one array increment and two LongAdder additions, without locks, so it
+ * can be called on every request from any number of threads.
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int MAX_EXPONENT = 40;
+    private static final long MAX_VALUE = (1L << MAX_EXPONENT) - 1;
+    private static final int BUCKETS = (MAX_EXPONENT - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder sum = new LongAdder();
+
+    /** Records a duration of NANOS nanoseconds. A negative NANOS counts as 0. */
+    public void record(long nanos) {
+        long value = Math.min(Math.max(nanos, 0), MAX_VALUE);
+        counts.incrementAndGet(index(value));
+        sum.add(value);
+    }
+
+    /** Returns a consistent copy of the durations recorded so far. */
+    public Snapshot snapshot() {
+        long[] copy = new long[BUCKETS];
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i += 1) {
+            copy[i] = counts.get(i);
+            count += copy[i];
+        }
+        return new Snapshot(copy, count, sum.sum());
+    }
+
+    /** Returns the number of durations recorded so far. */
+    public long count() {
+        return snapshot().count();
+    }
+
+    /** Returns the total of the durations recorded so far, in nanoseconds. */
+    public long sum() {
+        return sum.sum();
+    }
+
+    /** The durations recorded by a LatencyHistogram up to some moment. */
+    public static class Snapshot {
+        private final long[] counts;
+        private final long count;
+        private final long sum;
+
+        private Snapshot(long[] counts, long count, long sum) {
+            this.counts = counts;
+            this.count = count;
+            this.sum = sum;
+        }
+
+        /** Returns the number of durations. */
+        public long count() {
+            return count;
+        }
+
+        /**
+         * Returns the total of the durations in nanoseconds. Durations recorded while the
+         * snapshot was taken may be in the total but not in the count, or the other way.
+         */
+        public long sum() {
+            return sum;
+        }
+
+        /**
+         * Returns the smallest duration, up to the precision of the buckets, that at least
+         * a fraction Q of the durations do not exceed, or 0 if there are none. Throws an
+         * IllegalArgumentException if Q is not between 0 and 1.
+         */
+        public long percentile(double q) {
+            if (!(q >= 0 && q <= 1)) {
+                throw new IllegalArgumentException("Percentile must be between 0 and 1: " + q);
+            }
+            if (count == 0) {
+                return 0;
+            }
+            long target = Math.max(1, (long) Math.ceil(q * count));
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i += 1) {
+                seen += counts[i];
+                if (seen >= target) {
+                    return highest(i);
+                }
+            }
+            return MAX_VALUE;
+        }
+
+        /**
+         * Returns the number of durations that are at most NANOS nanoseconds, counting only
+         * buckets that lie wholly at or below NANOS.
+         */
+        public long countAtMost(long nanos) {
+            long total = 0;
+            for (int i = 0; i < BUCKETS && highest(i) <= nanos; i += 1) {
+                total += counts[i];
+            }
+            return total;
+        }
+    }
+
+    /** Returns the bucket of VALUE, which is between 0 and MAX_VALUE. */
+    private static int index(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    /** Returns the smallest value in bucket INDEX, or MAX_VALUE + 1 past the last bucket. */
+    private static long lowest(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        long subBucket = index % SUB_BUCKETS;
+        return (SUB_BUCKETS + subBucket) << (exponent - SUB_BUCKET_BITS);
+    }
+
+    /** Returns the largest value in bucket INDEX. */
+    private static long highest(int index) {
+        return lowest(index + 1) - 1;
+    }
+}
@@ -11,5 +11,9 @@ public class Utils {
     public static final String SHORT_WORDS_FILE = PREFIX + "very_short.csv";
     public static final String TOTAL_COUNTS_FILE = PREFIX + "total_counts.csv";
     public static final String SHORTER_WORDS_FILE = PREFIX + "less_short.csv";
+
+    /** Binary snapshot of TOP_49887_WORDS_FILE and TOTAL_COUNTS_FILE, built with
+     *  "java ngrams.SnapshotStore". */
+    public static final String TOP_49887_WORDS_SNAPSHOT = PREFIX + "top_49887_words.ngs";
 }
 
@@ -14,7 +14,9 @@ $(function() {
             words: document.getElementById('words').value,
             startYear: document.getElementById('start').value,
             endYear: document.getElementById('end').value,
-            k: document.getElementById('k').value
+            k: document.getElementById('k').value,
+            prefixes: document.getElementById('prefixes') ? document.getElementById('prefixes').value : 'each',
+            smoothing: document.getElementById('smoothing') ? document.getElementById('smoothing').value : ''
         }
     }
 
@@ -27,6 +29,8 @@ $(function() {
         $("#plot").show();
 
         var params = get_params();
+        /* The chart format only applies to /history. */
+        params.format = document.getElementById('format') ? document.getElementById('format').value : 'png';
         console.log(params);
         $.get({
             async: false,
@@ -35,7 +39,17 @@ $(function() {
             success: function(data) {
             	console.log(data)
 
-                plot.src = 'data:image/png;base64,' + data;
+                /* Points arrive as a JSON array rather than a string. An overloaded
+                 * server sends SVG even when asked for PNG. */
+                if (params.format == 'points') {
+                    $("#plot").hide();
+                    $("#textresult").show();
+                    textresult.value = JSON.stringify(data);
+                } else if (params.format == 'svg' || data.startsWith('<svg')) {
+                    plot.src = 'data:image/svg+xml;charset=utf-8,' + encodeURIComponent(data);
+                } else {
+                    plot.src = 'data:image/png;base64,' + data;
+                }
 
             },
             error: function(data) {
@@ -0,0 +1,139 @@
+import browser.BatchHandler;
+import browser.NgordnetQuery;
+import browser.NgordnetQueryHandler;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import main.HistoryTextHandler;
+import ngrams.ColumnarStore;
+import ngrams.NGramMap;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.google.common.truth.Truth.assertThat;
+
+/** Unit Tests for the BatchHandler class. */
+public class BatchHandlerTest {
+    private static NGramMap map() {
+        ColumnarStore.Builder builder = new ColumnarStore.Builder();
+        for (int year = 2000; year < 2010; year += 1) {
+            builder.add("cat", year, year - 1990);
+            builder.add("dog", year, 2 * (year - 1990));
+            builder.addTotal(year, 1000);
+        }
+        return new NGramMap(builder.build());
+    }
+
+    /** Returns the lines of the response of HANDLER to BODY, keyed by their index. */
+    private static Map<Integer, JsonObject> post(BatchHandler handler, String body, String acceptEncoding)
+            throws Exception {
+        FakeSpark.RecordingResponse response = new FakeSpark.RecordingResponse();
+        assertThat(handler.handle(FakeSpark.request(body, acceptEncoding), response)).isEqualTo("");
+        assertThat(response.type).isEqualTo("application/x-ndjson");
+        Map<Integer, JsonObject> lines = new HashMap<>();
+        for (String line : response.text().split("\n")) {
+            JsonObject object = JsonParser.parseString(line).getAsJsonObject();
+            assertThat(lines.put(object.get("index").getAsInt(), object)).isNull();
+        }
+        return lines;
+    }
+
+    @Test
+    public void testResultsAndIndexes() throws Exception {
+        HistoryTextHandler history = new HistoryTextHandler(map());
+        BatchHandler batch = new BatchHandler(Map.of("historytext", history));
+        for (String acceptEncoding : new String[]{null, "gzip"}) {
+            Map<Integer, JsonObject> lines = post(batch, "[{\"endpoint\": \"historytext\", \"words\": [\"cat\"]},"
+                    + "{\"endpoint\": \"historytext\", \"words\": [\"dog\"], \"startYear\": 2005},"
+                    + "{\"endpoint\": \"historytext\", \"words\": [\"cat\", \"dog\"], \"smoothing\": \"ma:3\"}]",
+                    acceptEncoding);
+            assertThat(lines.size()).isEqualTo(3);
+            assertThat(lines.get(0).get("result").getAsString()).isEqualTo(
+                    history.handle(new NgordnetQuery(List.of("cat"), 1900, 2020, 0)));
+            assertThat(lines.get(1).get("result").getAsString()).isEqualTo(
+                    history.handle(new NgordnetQuery(List.of("dog"), 2005, 2020, 0)));
+            assertThat(lines.get(2).get("result").getAsString()).isEqualTo(
+                    history.handle(new NgordnetQuery(List.of("cat", "dog"), 1900, 2020, 0, false, "ma:3")));
+        }
+    }
+
+    @Test
+    public void testErrorLines() throws Exception {
+        HistoryTextHandler history = new HistoryTextHandler(map());
+        BatchHandler batch = new BatchHandler(Map.of("historytext", history));
+        Map<Integer, JsonObject> lines = post(batch, "[{\"endpoint\": \"nowhere\"},"
+                + "{\"endpoint\": \"historytext\", \"words\": [\"cat\"], \"smoothing\": \"bogus\"},"
+                + "{\"endpoint\": \"historytext\", \"words\": [\"cat\"], \"format\": \"binary\"},"
+                + "{\"endpoint\": \"historytext\", \"words\": [\"cat\"]}]", null);
+        assertThat(lines.get(0).get("error").getAsString()).isEqualTo("Unknown endpoint: nowhere");
+        assertThat(lines.get(1).has("error")).isTrue();
+        assertThat(lines.get(2).get("error").getAsString()).contains("raw bytes");
+        assertThat(lines.get(3).has("result")).isTrue();
+        assertThat(history.metrics().errors()).isEqualTo(1L);
+    }
+
+    @Test
+    public void testFailureOutsideHandlerIsReportedInLine() throws Exception {
+        NgordnetQueryHandler failing = new NgordnetQueryHandler() {
+            @Override
+            public String handle(NgordnetQuery q) {
+                throw new AssertionError("broken " + q.words());
+            }
+        };
+        BatchHandler batch = new BatchHandler(Map.of("broken", failing));
+        Map<Integer, JsonObject> lines = post(batch, "[{\"endpoint\": \"broken\", \"words\": [\"a\"]},"
+                + "{\"endpoint\": \"broken\", \"words\": [\"b\"]}]", null);
+        assertThat(lines.get(0).get("error").getAsString()).contains("broken [a]");
+        assertThat(lines.get(1).get("error").getAsString()).contains("broken [b]");
+    }
+
+    @Test
+    public void testParallelismIsBounded() throws Exception {
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger mostRunning = new AtomicInteger();
+        NgordnetQueryHandler slow = new NgordnetQueryHandler() {
+            @Override
+            public String handle(NgordnetQuery q) {
+                mostRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                try {
+                    Thread.sleep(5);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                running.decrementAndGet();
+                return q.words().toString();
+            }
+        };
+        BatchHandler batch = new BatchHandler(Map.of("slow", slow), 2);
+        List<String> queries = new ArrayList<>();
+        for (int i = 0; i < 40; i += 1) {
+            queries.add("{\"endpoint\": \"slow\", \"words\": [\"w" + i + "\"]}");
+        }
+        Map<Integer, JsonObject> lines = post(batch, "[" + String.join(",", queries) + "]", null);
+        assertThat(lines.size()).isEqualTo(40);
+        assertThat(lines.get(17).get("result").getAsString()).isEqualTo("[w17]");
+        assertThat(mostRunning.get()).isAtMost(2);
+    }
+
+    @Test
+    public void testRejectsBadBatches() throws Exception {
+        BatchHandler batch = new BatchHandler(Map.of());
+        FakeSpark.RecordingResponse response = new FakeSpark.RecordingResponse();
+        batch.handle(FakeSpark.request("{\"endpoint\": ", null), response);
+        assertThat(response.status).isEqualTo(400);
+
+        List<String> queries = new ArrayList<>();
+        for (int i = 0; i <= BatchHandler.MAX_QUERIES; i += 1) {
+            queries.add("{}");
+        }
+        response = new FakeSpark.RecordingResponse();
+        Object body = batch.handle(FakeSpark.request("[" + String.join(",", queries) + "]", null), response);
+        assertThat(response.status).isEqualTo(400);
+        assertThat(body.toString()).contains("at most " + BatchHandler.MAX_QUERIES);
+        assertThat(response.body.size()).isEqualTo(0);
+    }
+}
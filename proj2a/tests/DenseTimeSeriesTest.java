@@ -0,0 +1,67 @@
+import ngrams.DenseTimeSeries;
+import ngrams.TimeSeries;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.DoubleBuffer;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/** Unit Tests for the DenseTimeSeries class. */
+public class DenseTimeSeriesTest {
+    @Test
+    public void testPlusMatchesTimeSeries() {
+        TimeSeries ts1 = new TimeSeries();
+        ts1.put(2000, 0.5);
+        ts1.put(2004, 4.9);
+        ts1.put(2006, 2.2);
+        ts1.put(2001, 2.2);
+
+        TimeSeries ts2 = new TimeSeries();
+        ts2.put(2006, 4.4);
+        ts2.put(2004, 0.7);
+        ts2.put(2002, 2.0);
+        ts2.put(1400, 7.0);
+        ts2.put(2100, 8.8);
+
+        DenseTimeSeries total = new DenseTimeSeries(ts1).plus(new DenseTimeSeries(ts2));
+        TimeSeries expected = ts1.plus(ts2);
+        assertThat(total.years()).isEqualTo(expected.years());
+        for (int i = 0; i < expected.size(); i += 1) {
+            assertThat(total.data().get(i)).isWithin(1E-10).of(expected.data().get(i));
+        }
+    }
+
+    @Test
+    public void testDividedBy() {
+        TimeSeries ts1 = new TimeSeries();
+        ts1.put(2000, 0.5);
+        ts1.put(2001, 2.2);
+
+        TimeSeries ts2 = new TimeSeries();
+        ts2.put(2000, 0.5);
+        ts2.put(2001, 0.8);
+        ts2.put(2002, 2.0);
+
+        DenseTimeSeries quotient = new DenseTimeSeries(ts1).dividedBy(new DenseTimeSeries(ts2));
+        assertThat(quotient.years()).containsExactly(2000, 2001).inOrder();
+        assertThat(quotient.data()).containsExactly(1.0, 2.75).inOrder();
+
+        assertThrows(IllegalArgumentException.class,
+                () -> new DenseTimeSeries(ts2).dividedBy(new DenseTimeSeries(ts1)));
+    }
+
+    @Test
+    public void testAddColumn() {
+        DoubleBuffer column = DoubleBuffer.wrap(new double[]{1.0, Double.NaN, 3.0, 4.0});
+        DenseTimeSeries sum = new DenseTimeSeries();
+        sum.addColumn(column, 1999, 1900, 2001);
+        sum.addColumn(column, 1999, 2001, 2100);
+
+        assertThat(sum.years()).containsExactly(1999, 2001, 2002).inOrder();
+        assertThat(sum.data()).containsExactly(1.0, 6.0, 4.0).inOrder();
+        assertThat(sum.containsYear(2000)).isFalse();
+        assertThat(sum.toTimeSeries()).containsExactly(1999, 1.0, 2001, 6.0, 2002, 4.0).inOrder();
+    }
+}
@@ -0,0 +1,121 @@
+import spark.QueryParamsMap;
+import spark.Request;
+import spark.Response;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+/** Spark requests and responses for calling routes directly, without a server. */
+class FakeSpark {
+    /** Returns a request with the query parameters PARAMS and the header ACCEPTENCODING, if not null. */
+    static Request request(Map<String, String> params, String acceptEncoding) {
+        return request(params, acceptEncoding, "");
+    }
+
+    /** Returns a request with the body BODY and the header ACCEPTENCODING, if not null. */
+    static Request request(String body, String acceptEncoding) {
+        return request(Map.of(), acceptEncoding, body);
+    }
+
+    private static Request request(Map<String, String> queryParams, String acceptEncoding, String requestBody) {
+        return new Request() {
+            @Override
+            public QueryParamsMap queryMap() {
+                return new QueryParamsMap() {
+                    @Override
+                    public QueryParamsMap get(String... keys) {
+                        String value = queryParams.get(keys[0]);
+                        return new QueryParamsMap() {
+                            @Override
+                            public String value() {
+                                return value;
+                            }
+                        };
+                    }
+                };
+            }
+
+            @Override
+            public String headers(String header) {
+                return header.equals("Accept-Encoding") ? acceptEncoding : null;
+            }
+
+            @Override
+            public String body() {
+                return requestBody;
+            }
+        };
+    }
+
+    /** A response that records its headers and the bytes written to its servlet output stream. */
+    static class RecordingResponse extends Response {
+        final Map<String, String> headers = new HashMap<>();
+        final ByteArrayOutputStream body = new ByteArrayOutputStream();
+        String type;
+        int status = 200;
+
+        @Override
+        public void header(String header, String value) {
+            headers.put(header, value);
+        }
+
+        @Override
+        public void type(String contentType) {
+            type = contentType;
+        }
+
+        @Override
+        public void status(int statusCode) {
+            status = statusCode;
+        }
+
+        @Override
+        public HttpServletResponse raw() {
+            ServletOutputStream out = new ServletOutputStream() {
+                @Override
+                public void write(int b) {
+                    body.write(b);
+                }
+
+                @Override
+                public boolean isReady() {
+                    return true;
+                }
+
+                @Override
+                public void setWriteListener(WriteListener listener) {
+                }
+            };
+            return (HttpServletResponse) Proxy.newProxyInstance(FakeSpark.class.getClassLoader(),
+                    new Class<?>[]{HttpServletResponse.class},
+                    (proxy, method, args) -> method.getName().equals("getOutputStream") ? out : null);
+        }
+
+        /** Returns the bytes written to the body, decompressed if it was sent gzip-encoded. */
+        byte[] bytes() {
+            if (!"gzip".equals(headers.get("Content-Encoding"))) {
+                return body.toByteArray();
+            }
+            try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(body.toByteArray()))) {
+                return in.readAllBytes();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        /** Returns the body, decompressed if needed, as text. */
+        String text() {
+            return new String(bytes(), StandardCharsets.UTF_8);
+        }
+    }
+}
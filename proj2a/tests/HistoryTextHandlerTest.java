@@ -1,18 +1,39 @@
-
-/*
 import browser.NgordnetQuery;
+import com.google.gson.JsonParser;
 import main.HistoryTextHandler;
+import ngrams.ColumnarStore;
 import ngrams.NGramMap;
 
 import org.junit.jupiter.api.Test;
 import java.util.List;
+import java.util.Map;
 
-import static utils.Utils.*;
 import static com.google.common.truth.Truth.assertThat;
+
+/*
+import static utils.Utils.*;
  */
 
 // uncomment this test whenever you are ready!
 public class HistoryTextHandlerTest {
+    @Test
+    public void testChartFormatIsSentAsText() throws Exception {
+        ColumnarStore.Builder builder = new ColumnarStore.Builder();
+        builder.add("cat", 2006, 10);
+        builder.add("cat", 2007, 20);
+        builder.addTotal(2006, 100);
+        builder.addTotal(2007, 100);
+        HistoryTextHandler handler = new HistoryTextHandler(new NGramMap(builder.build()));
+
+        /* The page used to send its chart format to every endpoint. */
+        FakeSpark.RecordingResponse response = new FakeSpark.RecordingResponse();
+        Object body = handler.handle(FakeSpark.request(Map.of("words", "cat", "startYear", "2006",
+                "endYear", "2007", "format", "png"), null), response);
+        assertThat(JsonParser.parseString(body.toString()).getAsString()).isEqualTo("cat: {2006=0.1, 2007=0.2}\n");
+        assertThat(handler.handle(new NgordnetQuery(List.of("cat"), 2006, 2007, 0, false, "", "svg")))
+                .isEqualTo("cat: {2006=0.1, 2007=0.2}\n");
+    }
+
     /*
     @Test
     public void testHandle() {
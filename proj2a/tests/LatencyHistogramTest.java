@@ -0,0 +1,87 @@
+import org.junit.jupiter.api.Test;
+import utils.LatencyHistogram;
+
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/** Unit Tests for the LatencyHistogram class. */
+public class LatencyHistogramTest {
+    @Test
+    public void testSmallValuesAreExact() {
+        LatencyHistogram h = new LatencyHistogram();
+        for (int i = 0; i < 16; i += 1) {
+            h.record(i);
+        }
+        LatencyHistogram.Snapshot s = h.snapshot();
+        assertThat(s.count()).isEqualTo(16L);
+        assertThat(s.sum()).isEqualTo(120L);
+        assertThat(s.percentile(0)).isEqualTo(0L);
+        assertThat(s.percentile(0.5)).isEqualTo(7L);
+        assertThat(s.percentile(1)).isEqualTo(15L);
+        assertThat(s.countAtMost(3)).isEqualTo(4L);
+    }
+
+    @Test
+    public void testRelativeError() {
+        LatencyHistogram h = new LatencyHistogram();
+        Random r = new Random(25);
+        for (int i = 0; i < 1000; i += 1) {
+            long value = (long) Math.exp(r.nextDouble() * 27);
+            LatencyHistogram single = new LatencyHistogram();
+            single.record(value);
+            long reported = single.snapshot().percentile(1);
+            assertThat(reported).isAtLeast(value);
+            assertThat((double) reported).isAtMost(value + value / 16.0 + 1);
+            h.record(value);
+        }
+        assertThat(h.count()).isEqualTo(1000L);
+    }
+
+    @Test
+    public void testPercentiles() {
+        LatencyHistogram h = new LatencyHistogram();
+        for (int i = 1; i <= 1000; i += 1) {
+            h.record(i * 1000L);
+        }
+        LatencyHistogram.Snapshot s = h.snapshot();
+        assertThat((double) s.percentile(0.5)).isWithin(500000 / 16.0).of(500000);
+        assertThat((double) s.percentile(0.99)).isWithin(990000 / 16.0).of(990000);
+        assertThat(s.countAtMost(Long.MAX_VALUE)).isEqualTo(1000L);
+        assertThat(s.countAtMost(100000)).isAtMost(100L);
+        assertThat(s.countAtMost(100000)).isAtLeast(90L);
+        assertThrows(IllegalArgumentException.class, () -> s.percentile(1.5));
+    }
+
+    @Test
+    public void testOutOfRangeValues() {
+        LatencyHistogram h = new LatencyHistogram();
+        h.record(-5);
+        h.record(Long.MAX_VALUE);
+        LatencyHistogram.Snapshot s = h.snapshot();
+        assertThat(s.count()).isEqualTo(2L);
+        assertThat(s.percentile(0.5)).isEqualTo(0L);
+        assertThat(s.percentile(1)).isEqualTo((1L << 40) - 1);
+    }
+
+    @Test
+    public void testConcurrentRecording() throws InterruptedException {
+        LatencyHistogram h = new LatencyHistogram();
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        for (int t = 0; t < 8; t += 1) {
+            pool.execute(() -> {
+                for (int i = 0; i < 10000; i += 1) {
+                    h.record(i);
+                }
+            });
+        }
+        pool.shutdown();
+        assertThat(pool.awaitTermination(30, TimeUnit.SECONDS)).isTrue();
+        assertThat(h.count()).isEqualTo(80000L);
+        assertThat(h.sum()).isEqualTo(8L * 10000 * 9999 / 2);
+    }
+}
@@ -0,0 +1,98 @@
+import browser.EndpointMetrics;
+import browser.MetricsHandler;
+import browser.NgordnetQuery;
+import browser.NgordnetQueryHandler;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static com.google.common.truth.Truth.assertThat;
+
+/** Unit Tests for the MetricsHandler class. */
+public class MetricsHandlerTest {
+    private static NgordnetQueryHandler handler() {
+        return new NgordnetQueryHandler() {
+            @Override
+            public String handle(NgordnetQuery q) {
+                return "";
+            }
+        };
+    }
+
+    private static String render(Map<String, NgordnetQueryHandler> handlers) {
+        FakeSpark.RecordingResponse response = new FakeSpark.RecordingResponse();
+        String text = new MetricsHandler(handlers).handle(FakeSpark.request(Map.of(), null), response).toString();
+        assertThat(response.type).startsWith("text/plain; version=0.0.4");
+        return text;
+    }
+
+    private static long occurrences(List<String> lines, String line) {
+        return lines.stream().filter(line::equals).count();
+    }
+
+    @Test
+    public void testHistogram() {
+        NgordnetQueryHandler handler = handler();
+        handler.metrics().record(EndpointMetrics.Stage.LOOKUP, 50_000);
+        handler.metrics().record(EndpointMetrics.Stage.LOOKUP, 200_000);
+        handler.metrics().record(EndpointMetrics.Stage.LOOKUP, 3_000_000);
+        List<String> lines = Arrays.asList(render(Map.of("history", handler)).split("\n"));
+
+        String name = "ngordnet_request_duration_seconds";
+        String labels = "endpoint=\"history\",stage=\"lookup\"";
+        int help = lines.indexOf("# HELP " + name + " Time spent in each stage of answering a query.");
+        assertThat(help).isAtLeast(0);
+        assertThat(lines.get(help + 1)).isEqualTo("# TYPE " + name + " histogram");
+        assertThat(lines).contains(name + "_bucket{" + labels + ",le=\"0.0001\"} 1");
+        assertThat(lines).contains(name + "_bucket{" + labels + ",le=\"0.00025\"} 2");
+        assertThat(lines).contains(name + "_bucket{" + labels + ",le=\"0.0025\"} 2");
+        assertThat(lines).contains(name + "_bucket{" + labels + ",le=\"0.005\"} 3");
+        assertThat(lines).contains(name + "_bucket{" + labels + ",le=\"10\"} 3");
+        assertThat(lines).contains(name + "_bucket{" + labels + ",le=\"+Inf\"} 3");
+        assertThat(lines).contains(name + "_sum{" + labels + "} 0.00325");
+        assertThat(lines).contains(name + "_count{" + labels + "} 3");
+        String median = "ngordnet_request_duration_percentile_seconds{" + labels + ",percentile=\"0.5\"} ";
+        String medianLine = lines.stream().filter(line -> line.startsWith(median)).findFirst().orElseThrow();
+        assertThat(Double.parseDouble(medianLine.substring(median.length()))).isWithin(0.0002 / 16).of(0.0002);
+
+        /* Label values are plain decimals, and stages without samples are left out. */
+        for (String line : lines) {
+            if (!line.startsWith("#")) {
+                assertThat(line.substring(0, line.indexOf('}'))).doesNotContain("E-");
+            }
+            assertThat(line).doesNotContain("stage=\"render\"");
+        }
+    }
+
+    @Test
+    public void testGroupingAndEscaping() {
+        Map<String, NgordnetQueryHandler> handlers = new TreeMap<>();
+        for (String endpoint : List.of("a\"b\\c", "plain")) {
+            NgordnetQueryHandler handler = handler();
+            handler.metrics().counter("test_things_total", "Things.", () -> 7);
+            handler.metrics().error();
+            handlers.put(endpoint, handler);
+        }
+        List<String> lines = Arrays.asList(render(handlers).split("\n"));
+
+        assertThat(occurrences(lines, "# TYPE ngordnet_request_errors_total counter")).isEqualTo(1L);
+        assertThat(occurrences(lines, "# TYPE test_things_total counter")).isEqualTo(1L);
+        int type = lines.indexOf("# TYPE test_things_total counter");
+        assertThat(lines.get(type + 1)).isEqualTo("test_things_total{endpoint=\"a\\\"b\\\\c\"} 7");
+        assertThat(lines.get(type + 2)).isEqualTo("test_things_total{endpoint=\"plain\"} 7");
+        assertThat(lines).contains("ngordnet_request_errors_total{endpoint=\"a\\\"b\\\\c\"} 1");
+
+        /* Every sample follows the HELP and TYPE lines of its own metric. */
+        String current = null;
+        for (String line : lines) {
+            if (line.startsWith("# TYPE ")) {
+                current = line.split(" ")[2];
+            } else if (!line.startsWith("#")) {
+                assertThat(line).startsWith(current);
+            }
+        }
+    }
+}
@@ -0,0 +1,123 @@
+import ngrams.ColumnarStore;
+import ngrams.NGramMap;
+import ngrams.TimeSeries;
+import ngrams.WeightMode;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.google.common.truth.Truth.assertThat;
+
+/**
+ * Stress test for NGramMap: many threads query while another thread keeps reloading
+ * the map with one of two data sets. Every query must see exactly one of them.
+ */
+public class NGramMapConcurrencyTest {
+    private static final int NUM_WORDS = 100;
+    private static final int FIRST_YEAR = 1950;
+    private static final int LAST_YEAR = 1999;
+    private static final int NUM_READERS = 8;
+    private static final long RUN_MILLIS = 2000;
+
+    /**
+     * Returns a store in which word "wI" occurs SCALE * (I + 1) times every year, and
+     * every year has SCALE * 1000 words in total, so weights do not depend on SCALE.
+     */
+    private static ColumnarStore store(int scale) {
+        ColumnarStore.Builder builder = new ColumnarStore.Builder();
+        for (int i = 0; i < NUM_WORDS; i += 1) {
+            for (int year = FIRST_YEAR; year <= LAST_YEAR; year += 1) {
+                builder.add("w" + i, year, scale * (i + 1));
+            }
+        }
+        if (scale == 2) {
+            builder.add("w_extra", FIRST_YEAR, 1);
+        }
+        for (int year = FIRST_YEAR; year <= LAST_YEAR; year += 1) {
+            builder.addTotal(year, scale * 1000);
+        }
+        return builder.build();
+    }
+
+    @Test
+    public void testReadersSeeWholeSnapshots() throws InterruptedException {
+        ColumnarStore one = store(1);
+        ColumnarStore two = store(2);
+        NGramMap ngm = new NGramMap(one, WeightMode.LAZY);
+
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicLong queries = new AtomicLong();
+        ConcurrentLinkedQueue<Throwable> errors = new ConcurrentLinkedQueue<>();
+        CountDownLatch done = new CountDownLatch(NUM_READERS);
+        for (int t = 0; t < NUM_READERS; t += 1) {
+            int seed = t;
+            Thread reader = new Thread(() -> {
+                try {
+                    int i = seed;
+                    while (running.get()) {
+                        checkQueries(ngm.snapshot(), i % NUM_WORDS);
+                        checkWeight(ngm, i % NUM_WORDS);
+                        queries.incrementAndGet();
+                        i += 1;
+                    }
+                } catch (Throwable e) {
+                    errors.add(e);
+                } finally {
+                    done.countDown();
+                }
+            });
+            reader.start();
+        }
+
+        long reloads = 0;
+        long deadline = System.currentTimeMillis() + RUN_MILLIS;
+        while (System.currentTimeMillis() < deadline && errors.isEmpty()) {
+            ngm.reload(reloads % 2 == 0 ? two : one);
+            reloads += 1;
+            Thread.sleep(1);
+        }
+        running.set(false);
+        done.await();
+
+        assertThat(errors).isEmpty();
+        assertThat(reloads).isGreaterThan(10L);
+        assertThat(queries.get()).isGreaterThan(0L);
+    }
+
+    /** Checks that several queries on SNAPSHOT all agree on which data set it holds. */
+    private static void checkQueries(NGramMap snapshot, int i) {
+        int scale = snapshot.wordId("w_extra") >= 0 ? 2 : 1;
+
+        TimeSeries counts = snapshot.countHistory("w" + i);
+        assertThat(counts.size()).isEqualTo(LAST_YEAR - FIRST_YEAR + 1);
+        for (double count : counts.data()) {
+            assertThat(count).isEqualTo((double) scale * (i + 1));
+        }
+        assertThat(snapshot.totalCountHistory().get(FIRST_YEAR)).isEqualTo(scale * 1000.0);
+
+        List<String> matches = snapshot.wordsWithPrefix("w_");
+        assertThat(matches).hasSize(scale - 1);
+
+        Map<String, Double> top = snapshot.topWords(FIRST_YEAR, LAST_YEAR, 1);
+        assertThat(top.get("w" + (NUM_WORDS - 1)))
+                .isEqualTo((double) scale * NUM_WORDS * (LAST_YEAR - FIRST_YEAR + 1));
+
+        int id = snapshot.wordId("w" + i);
+        assertThat(snapshot.word(id)).isEqualTo("w" + i);
+    }
+
+    /** Checks a single weight query on the live NGMAP, which must not depend on the data set. */
+    private static void checkWeight(NGramMap ngm, int i) {
+        TimeSeries weights = ngm.weightHistory("w" + i, FIRST_YEAR, FIRST_YEAR + 9);
+        assertThat(weights.size()).isEqualTo(10);
+        for (double weight : weights.data()) {
+            assertThat(weight).isWithin(1E-15).of((i + 1) / 1000.0);
+        }
+    }
+}
@@ -1,14 +1,18 @@
+import ngrams.ColumnarStore;
 import ngrams.NGramMap;
 import ngrams.TimeSeries;
+import ngrams.WeightMode;
 
 import org.junit.jupiter.api.Test;
 
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 
 import static utils.Utils.*;
 import static com.google.common.truth.Truth.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 
 /** Unit Tests for the NGramMap class.
  *  @author Josh Hug
@@ -169,6 +173,183 @@ public class NGramMapTest {
         assertThat(noValidCount).isEmpty();
     }
 
+    @Test
+    public void testWeightModes() {
+        ColumnarStore.Builder builder = new ColumnarStore.Builder();
+        for (int year = 2000; year < 2010; year += 1) {
+            builder.add("cat", year, year - 1990);
+            builder.add("dog", year + 2, 3);
+            builder.addTotal(year, 100 * (year - 1995));
+        }
+        builder.add("late", 2010, 4);
+        ColumnarStore store = builder.build();
+
+        NGramMap expected = new NGramMap(store, WeightMode.ON_THE_FLY);
+        for (WeightMode mode : WeightMode.values()) {
+            NGramMap ngm = new NGramMap(store, mode);
+            /* Twice, so LAZY also answers from the column it kept. */
+            for (int i = 0; i < 2; i += 1) {
+                assertThat(ngm.weightHistory("cat")).isEqualTo(expected.weightHistory("cat"));
+                assertThat(ngm.weightHistory("cat", 2003, 2006))
+                        .isEqualTo(expected.weightHistory("cat", 2003, 2006));
+                assertThat(ngm.weightHistory("dog", 2002, 2009))
+                        .isEqualTo(expected.weightHistory("dog", 2002, 2009));
+                assertThat(ngm.weightHistory("missing")).isEmpty();
+            }
+            assertThat(ngm.weightHistory("cat").get(2005)).isWithin(1E-10).of(15.0 / 1000);
+
+            /* There are no totals for 2010 and 2011, whatever the mode. */
+            assertThrows(IllegalArgumentException.class, () -> ngm.weightHistory("late"));
+            assertThrows(IllegalArgumentException.class, () -> ngm.weightHistory("dog"));
+            assertThrows(IllegalArgumentException.class, () -> ngm.weightHistory("dog", 2005, 2011));
+        }
+    }
+
+    @Test
+    public void testSummedWeightHistoryOfManyWords() {
+        /* More words than are summed sequentially, so the sum is split across tasks. */
+        ColumnarStore.Builder builder = new ColumnarStore.Builder();
+        List<String> words = new ArrayList<>();
+        for (int i = 0; i < 1000; i += 1) {
+            String word = "word" + i;
+            words.add(word);
+            for (int year = 2000 + i % 7; year < 2010; year += 1) {
+                builder.add(word, year, (i * 31 + year) % 97 + 0.25);
+            }
+        }
+        for (int year = 2000; year < 2010; year += 1) {
+            builder.addTotal(year, 1000 + year);
+        }
+        NGramMap ngm = new NGramMap(builder.build());
+
+        TimeSeries expected = new TimeSeries();
+        for (String word : words) {
+            expected = expected.plus(ngm.weightHistory(word));
+        }
+        TimeSeries summed = ngm.summedWeightHistory(words);
+        assertThat(summed.years()).isEqualTo(expected.years());
+        for (int year : expected.years()) {
+            assertThat(summed.get(year)).isWithin(1E-9).of(expected.get(year));
+        }
+        assertThat(ngm.summedWeightHistory(words, 2003, 2005).years())
+                .containsExactly(2003, 2004, 2005).inOrder();
+    }
+
+    @Test
+    public void testWordsWithPrefix() {
+        NGramMap ngm = new NGramMap(SHORT_WORDS_FILE, TOTAL_COUNTS_FILE);
+
+        assertThat(ngm.wordsWithPrefix("wander")).containsExactly("wandered");
+        assertThat(ngm.wordsWithPrefix("requests")).isEmpty();
+        assertThat(ngm.wordsWithPrefix("")).contains("airport");
+
+        TimeSeries summed = ngm.summedPrefixWeightHistory("wander", 2005, 2006);
+        assertThat(summed).isEqualTo(ngm.weightHistory("wandered", 2005, 2006));
+    }
+
+    @Test
+    public void testWordIds() {
+        NGramMap ngm = new NGramMap(SHORT_WORDS_FILE, TOTAL_COUNTS_FILE);
+
+        int id = ngm.wordId("airport");
+        assertThat(ngm.word(id)).isEqualTo("airport");
+        assertThat(ngm.countView(id, 2007, 2008).toTimeSeries())
+                .isEqualTo(ngm.countHistory("airport", 2007, 2008));
+        assertThat(ngm.weightView(id, 2007, 2008).toTimeSeries())
+                .isEqualTo(ngm.weightHistory("airport", 2007, 2008));
+
+        assertThat(ngm.wordId("request")).isNotEqualTo(id);
+        assertThat(ngm.wordId("no such word")).isEqualTo(-1);
+        assertThat(ngm.weightView(-1, 2007, 2008).isEmpty()).isTrue();
+        assertThat(ngm.wordIdsWithPrefix("wander")).asList().containsExactly(ngm.wordId("wandered"));
+    }
+
+    @Test
+    public void testAppend() {
+        NGramMap ngm = new NGramMap(SHORT_WORDS_FILE, TOTAL_COUNTS_FILE);
+        int airport = ngm.wordId("airport");
+        TimeSeries requestBefore = ngm.countHistory("request");
+        NGramMap frozen = ngm.snapshot();
+
+        ColumnarStore.Builder delta = new ColumnarStore.Builder();
+        delta.add("airport", 2009, 180000);
+        delta.add("airport", 2008, 1);
+        delta.add("zeppelin", 2009, 42);
+        delta.addTotal(2009, 29000000000.0);
+        ngm.append(delta);
+
+        TimeSeries airportHistory = ngm.countHistory("airport");
+        assertThat(airportHistory.years()).containsExactly(2007, 2008, 2009).inOrder();
+        assertThat(airportHistory.get(2007)).isWithin(1E-10).of(175702);
+        assertThat(airportHistory.get(2008)).isWithin(1E-10).of(1);
+        assertThat(airportHistory.get(2009)).isWithin(1E-10).of(180000);
+        assertThat(ngm.wordId("airport")).isEqualTo(airport);
+        assertThat(ngm.countHistory("request")).isEqualTo(requestBefore);
+
+        assertThat(ngm.weightHistory("zeppelin", 2009, 2009).get(2009)).isWithin(1E-20).of(42 / 29000000000.0);
+        assertThat(ngm.wordsWithPrefix("zep")).containsExactly("zeppelin");
+        assertThat(ngm.totalCountHistory().get(2009)).isWithin(1E-10).of(29000000000.0);
+        assertThat(frozen.countHistory("airport").get(2008)).isWithin(1E-10).of(173294);
+        assertThat(frozen.wordId("zeppelin")).isEqualTo(-1);
+    }
+
+    @Test
+    public void testAppendToEmpty() {
+        NGramMap ngm = new NGramMap(new ColumnarStore.Builder().build());
+        ColumnarStore.Builder delta = new ColumnarStore.Builder();
+        delta.add("zeppelin", 2009, 42);
+        delta.add("airship", 2008, 7);
+        delta.addTotal(2009, 1000);
+        ngm.append(delta);
+
+        assertThat(ngm.countHistory("zeppelin").get(2009)).isWithin(1E-10).of(42);
+        assertThat(ngm.countHistory("airship").get(2008)).isWithin(1E-10).of(7);
+        assertThat(ngm.totalCountHistory().get(2009)).isWithin(1E-10).of(1000);
+        assertThat(ngm.wordId("zeppelin")).isEqualTo(0);
+    }
+
+    @Test
+    public void testSimilarWords() {
+        ColumnarStore.Builder builder = new ColumnarStore.Builder();
+        for (int year = 2000; year <= 2009; year += 1) {
+            builder.add("rising", year, year - 1999);
+            builder.add("doubled", year, 2 * (year - 1999));
+            builder.add("falling", year, 2010 - year);
+            builder.add("flat", year, 5);
+            builder.addTotal(year, 100);
+        }
+        builder.add("late", 2008, 3);
+        builder.add("late", 2009, 6);
+        NGramMap ngm = new NGramMap(builder.build());
+
+        Map<String, Double> similar = ngm.similarWords("rising", 2000, 2009, 3);
+        assertThat(similar.keySet()).containsExactly("doubled", "late", "falling").inOrder();
+        assertThat(similar.get("doubled")).isWithin(1E-10).of(1.0);
+        assertThat(similar.get("falling")).isWithin(1E-10).of(-1.0);
+
+        assertThat(ngm.similarWords("flat", 2000, 2009, 3)).isEmpty();
+        assertThat(ngm.similarWords("missing", 2000, 2009, 3)).isEmpty();
+        assertThat(ngm.similarWords("rising", 2005, 2005, 3)).isEmpty();
+
+        /* A K beyond the number of words returns every other word that has a correlation. */
+        assertThat(ngm.similarWords("rising", 2000, 2009, Integer.MAX_VALUE).keySet())
+                .containsExactly("doubled", "late", "falling").inOrder();
+    }
+
+    @Test
+    public void testTopWords() {
+        NGramMap ngm = new NGramMap(SHORT_WORDS_FILE, TOTAL_COUNTS_FILE);
+
+        Map<String, Double> top = ngm.topWords(2005, 2008, 1);
+        assertThat(top.keySet()).containsExactly("request");
+        assertThat(top.get("request")).isWithin(1E-10).of(646179.0 + 677820.0 + 697645.0 + 795265.0);
+
+        Map<String, Double> top2007 = ngm.topWords(2007, 2007, 2);
+        assertThat(top2007.keySet()).containsExactly("request", "airport").inOrder();
+
+        assertThat(ngm.topWords(1800, 1899, 5)).isEmpty();
+    }
+
     @Test
     public void testOnShortFile() {
         // creates an NGramMap from a large dataset
@@ -0,0 +1,200 @@
+import browser.EndpointMetrics;
+import browser.NgordnetQuery;
+import browser.NgordnetQueryHandler;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonParser;
+import main.HistoryHandler;
+import main.HistoryTextHandler;
+import main.SeriesFormat;
+import main.WeightHistories;
+import ngrams.ColumnarStore;
+import ngrams.NGramMap;
+import org.junit.jupiter.api.Test;
+import plotting.RenderPool;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/** Unit Tests for the request handling of NgordnetQueryHandler, mostly through HistoryTextHandler. */
+public class NgordnetQueryHandlerTest {
+    private static NGramMap map(int words) {
+        ColumnarStore.Builder builder = new ColumnarStore.Builder();
+        for (int i = 0; i < words; i += 1) {
+            for (int year = 2000; year < 2010; year += 1) {
+                builder.add(String.format("word%03d", i), year, i + year);
+            }
+        }
+        for (int year = 2000; year < 2010; year += 1) {
+            builder.addTotal(year, 1E6);
+        }
+        return new NGramMap(builder.build());
+    }
+
+    private static List<String> words(int n) {
+        List<String> words = new ArrayList<>();
+        for (int i = 0; i < n; i += 1) {
+            words.add(String.format("word%03d", i));
+        }
+        return words;
+    }
+
+    private static Map<String, String> params(int words, String format, String smoothing) {
+        Map<String, String> params = new HashMap<>();
+        params.put("words", String.join(",", words(words)));
+        params.put("startYear", "2000");
+        params.put("endYear", "2009");
+        params.put("format", format);
+        params.put("smoothing", smoothing);
+        return params;
+    }
+
+    /** Returns the response to PARAMS, with the text returned by the handler as its body. */
+    private static FakeSpark.RecordingResponse get(NgordnetQueryHandler handler, Map<String, String> params,
+                                                   String acceptEncoding) throws Exception {
+        FakeSpark.RecordingResponse response = new FakeSpark.RecordingResponse();
+        Object returned = handler.handle(FakeSpark.request(params, acceptEncoding), response);
+        response.body.writeBytes(returned.toString().getBytes(StandardCharsets.UTF_8));
+        return response;
+    }
+
+    @Test
+    public void testAcceptsGzip() {
+        assertThat(NgordnetQueryHandler.acceptsGzip(FakeSpark.request(Map.of(), null))).isFalse();
+        assertThat(NgordnetQueryHandler.acceptsGzip(FakeSpark.request(Map.of(), "gzip"))).isTrue();
+        assertThat(NgordnetQueryHandler.acceptsGzip(FakeSpark.request(Map.of(), "deflate, GZip"))).isTrue();
+        assertThat(NgordnetQueryHandler.acceptsGzip(FakeSpark.request(Map.of(), "gzip;q=0.5"))).isTrue();
+        assertThat(NgordnetQueryHandler.acceptsGzip(FakeSpark.request(Map.of(), "gzip;q=0"))).isFalse();
+        assertThat(NgordnetQueryHandler.acceptsGzip(FakeSpark.request(Map.of(), "br, gzip; Q=0.000"))).isFalse();
+        assertThat(NgordnetQueryHandler.acceptsGzip(FakeSpark.request(Map.of(), "gzipped, identity"))).isFalse();
+    }
+
+    @Test
+    public void testGzipText() throws Exception {
+        HistoryTextHandler handler = new HistoryTextHandler(map(50));
+        FakeSpark.RecordingResponse plain = get(handler, params(50, "", ""), null);
+        FakeSpark.RecordingResponse gzipped = get(handler, params(50, "", ""), "gzip");
+        assertThat(plain.headers.get("Content-Encoding")).isNull();
+        assertThat(gzipped.headers.get("Content-Encoding")).isEqualTo("gzip");
+        assertThat(gzipped.body.size()).isLessThan(plain.body.size());
+        assertThat(gzipped.text()).isEqualTo(plain.text());
+
+        /* Short responses are not worth compressing. */
+        FakeSpark.RecordingResponse small = get(handler, params(1, "", ""), "gzip");
+        assertThat(small.headers.get("Content-Encoding")).isNull();
+        assertThat(small.text()).startsWith("\"word000: ");
+    }
+
+    @Test
+    public void testGzipStreamed() throws Exception {
+        int words = HistoryTextHandler.STREAM_MIN_HISTORIES + 10;
+        HistoryTextHandler handler = new HistoryTextHandler(map(words));
+        FakeSpark.RecordingResponse plain = get(handler, params(words, "", ""), null);
+        FakeSpark.RecordingResponse gzipped = get(handler, params(words, "", ""), "gzip");
+        assertThat(gzipped.headers.get("Content-Encoding")).isEqualTo("gzip");
+        assertThat(gzipped.text()).isEqualTo(plain.text());
+        assertThat(plain.text()).isEqualTo(handler.respond(new NgordnetQuery(words(words), 2000, 2009, 0)));
+    }
+
+    @Test
+    public void testGzipRaw() throws Exception {
+        HistoryTextHandler handler = new HistoryTextHandler(map(50));
+        for (String format : List.of("json", "binary")) {
+            FakeSpark.RecordingResponse plain = get(handler, params(50, format, ""), null);
+            FakeSpark.RecordingResponse gzipped = get(handler, params(50, format, ""), "gzip");
+            assertThat(plain.type).isEqualTo(SeriesFormat.parse(format).contentType());
+            assertThat(gzipped.headers.get("Content-Encoding")).isEqualTo("gzip");
+            assertThat(gzipped.bytes()).isEqualTo(plain.bytes());
+        }
+        FakeSpark.RecordingResponse binary = get(handler, params(50, "binary", ""), "gzip");
+        List<WeightHistories.Entry> entries = SeriesFormat.readBinary(new ByteArrayInputStream(binary.bytes()));
+        assertThat(entries.size()).isEqualTo(50);
+        assertThat(entries.get(7).label()).isEqualTo("word007");
+    }
+
+    @Test
+    public void testPointsSentAsRawJson() throws Exception {
+        HistoryHandler handler = new HistoryHandler(map(3), new RenderPool(1, 1));
+        FakeSpark.RecordingResponse response = get(handler, params(3, "points", ""), null);
+        assertThat(response.type).isEqualTo("application/json");
+        JsonArray points = JsonParser.parseString(response.text()).getAsJsonArray();
+        assertThat(points.size()).isEqualTo(3);
+        assertThat(points.get(1).getAsJsonObject().get("label").getAsString()).isEqualTo("word001");
+    }
+
+    @Test
+    public void testOneEncodeSamplePerRequest() throws Exception {
+        HistoryTextHandler handler = new HistoryTextHandler(map(50));
+        get(handler, params(50, "", ""), "gzip");
+        assertThat(handler.metrics().stage(EndpointMetrics.Stage.ENCODE).count()).isEqualTo(1L);
+        get(handler, params(50, "", ""), "gzip");
+        get(handler, params(1, "", ""), null);
+        get(handler, params(1, "", ""), null);
+        assertThat(handler.metrics().stage(EndpointMetrics.Stage.ENCODE).count()).isEqualTo(4L);
+        assertThat(handler.metrics().stage(EndpointMetrics.Stage.TOTAL).count()).isEqualTo(4L);
+    }
+
+    /** Returns a handler that streams CHARS random letters, which gzip cannot shrink much, and then fails. */
+    private static NgordnetQueryHandler failingStream(int chars) {
+        return new NgordnetQueryHandler() {
+            @Override
+            public String handle(NgordnetQuery q) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            protected boolean shouldStream(NgordnetQuery q) {
+                return true;
+            }
+
+            @Override
+            protected void stream(NgordnetQuery q, Writer out) throws IOException {
+                Random random = new Random(chars);
+                for (int i = 0; i < chars; i += 1) {
+                    out.write('a' + random.nextInt(26));
+                }
+                throw new IllegalStateException("lost the data");
+            }
+        };
+    }
+
+    @Test
+    public void testStreamFailingAfterFirstBytesEndsWithMarker() throws Exception {
+        for (String acceptEncoding : new String[]{null, "gzip"}) {
+            NgordnetQueryHandler handler = failingStream(100_000);
+            FakeSpark.RecordingResponse response = get(handler, params(1, "", ""), acceptEncoding);
+            String text = JsonParser.parseString(response.text()).getAsString();
+            assertThat(text.length()).isGreaterThan(100_000);
+            assertThat(text).endsWith(NgordnetQueryHandler.STREAM_ERROR_MARKER);
+            assertThat(handler.metrics().errors()).isEqualTo(1L);
+        }
+
+        NgordnetQueryHandler handler = failingStream(10);
+        FakeSpark.RecordingResponse response = new FakeSpark.RecordingResponse();
+        assertThrows(IllegalStateException.class, () ->
+                handler.handle(FakeSpark.request(params(1, "", ""), "gzip"), response));
+        assertThat(response.body.size()).isEqualTo(0);
+    }
+
+    @Test
+    public void testFailureBeforeBodyIsNotGzipped() {
+        HistoryTextHandler handler = new HistoryTextHandler(map(50));
+        for (String format : List.of("json", "binary", "")) {
+            FakeSpark.RecordingResponse response = new FakeSpark.RecordingResponse();
+            assertThrows(IllegalArgumentException.class, () ->
+                    handler.handle(FakeSpark.request(params(50, format, "bogus"), "gzip"), response));
+            assertThat(response.headers.get("Content-Encoding")).isNull();
+            assertThat(response.body.size()).isEqualTo(0);
+        }
+        assertThat(handler.metrics().errors()).isEqualTo(3L);
+    }
+}
@@ -0,0 +1,44 @@
+import edu.princeton.cs.algs4.Stopwatch;
+import ngrams.ColumnarStore;
+import ngrams.ParallelLoader;
+
+import java.io.File;
+import java.util.concurrent.ForkJoinPool;
+
+import static utils.Utils.*;
+
+/** Reports the ingestion speed of ParallelLoader for an increasing number of
+ *  threads, compared with the line-by-line ColumnarStore.fromFiles.
+ *  Usage: java ParallelLoaderBenchmark [WORDSFILE COUNTSFILE]
+ */
+public class ParallelLoaderBenchmark {
+    private static final int ROUNDS = 3;
+
+    public static void main(String[] args) {
+        String wordsFile = args.length > 0 ? args[0] : TOP_49887_WORDS_FILE;
+        String countsFile = args.length > 1 ? args[1] : TOTAL_COUNTS_FILE;
+        double megabytes = new File(wordsFile).length() / 1e6;
+        System.out.printf("Loading %s (%.1f MB), best of %d rounds%n", wordsFile, megabytes, ROUNDS);
+
+        double best = Double.MAX_VALUE;
+        for (int i = 0; i < ROUNDS; i += 1) {
+            Stopwatch sw = new Stopwatch();
+            ColumnarStore.fromFiles(wordsFile, countsFile);
+            best = Math.min(best, sw.elapsedTime());
+        }
+        System.out.printf("%-12s %8.3f s %10.1f MB/s%n", "sequential", best, megabytes / best);
+
+        int maxThreads = Runtime.getRuntime().availableProcessors();
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            best = Double.MAX_VALUE;
+            for (int i = 0; i < ROUNDS; i += 1) {
+                Stopwatch sw = new Stopwatch();
+                ParallelLoader.load(wordsFile, countsFile, pool);
+                best = Math.min(best, sw.elapsedTime());
+            }
+            pool.shutdown();
+            System.out.printf("%-12s %8.3f s %10.1f MB/s%n", threads + " threads", best, megabytes / best);
+        }
+    }
+}
@@ -0,0 +1,91 @@
+import ngrams.ColumnarStore;
+import ngrams.NGramMap;
+import ngrams.ParallelLoader;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ForkJoinPool;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/** Unit Tests for the ParallelLoader class. */
+public class ParallelLoaderTest {
+    private static final String COUNTS = "2000,1000,1,1\n2001,2000,1,1\n";
+
+    private static Path write(String name, String text) throws IOException {
+        Path dir = Files.createTempDirectory("parallel-loader");
+        return Files.writeString(dir.resolve(name), text);
+    }
+
+    private static long[] boundaries(String text, int chunkBytes) throws IOException {
+        try (FileChannel channel = FileChannel.open(write("words.csv", text))) {
+            return ParallelLoader.chunkBoundaries(channel, chunkBytes);
+        }
+    }
+
+    private static NGramMap load(String words, int chunkBytes) throws IOException {
+        Path wordsFile = write("words.csv", words);
+        Path countsFile = write("counts.csv", COUNTS);
+        ColumnarStore.Builder builder = ParallelLoader.loadBuilder(wordsFile.toString(),
+                countsFile.toString(), new ForkJoinPool(4), chunkBytes);
+        return new NGramMap(builder.build());
+    }
+
+    @Test
+    public void testChunkBoundaries() throws IOException {
+        String lines = "aaa\t2000\t1\nbbb\t2000\t2\nccc\t2000\t3\n";
+        /* Every chunk ends on the first newline after CHUNKBYTES. */
+        assertThat(boundaries(lines, 5)).isEqualTo(new long[]{0, 11, 22, 33});
+        /* A chunk that would end in the middle of a line takes the rest of it. */
+        assertThat(boundaries(lines, 15)).isEqualTo(new long[]{0, 22, 33});
+        assertThat(boundaries(lines, 1 << 20)).isEqualTo(new long[]{0, 33});
+        assertThat(boundaries("", 5)).isEqualTo(new long[]{0, 0});
+    }
+
+    @Test
+    public void testChunkBoundariesCrlf() throws IOException {
+        String lines = "aaa\t2000\t1\r\nbbb\t2000\t2\r\nccc\t2000\t3\r\n";
+        assertThat(boundaries(lines, 5)).isEqualTo(new long[]{0, 12, 24, 36});
+
+        NGramMap ngm = load(lines, 5);
+        assertThat(ngm.countHistory("bbb").get(2000)).isWithin(1E-10).of(2);
+        assertThat(ngm.countHistory("ccc").get(2000)).isWithin(1E-10).of(3);
+    }
+
+    @Test
+    public void testChunkBoundariesWithoutTrailingNewline() throws IOException {
+        String lines = "aaa\t2000\t1\nbbb\t2000\t2";
+        assertThat(boundaries(lines, 5)).isEqualTo(new long[]{0, 11, 21});
+        assertThat(boundaries(lines, 12)).isEqualTo(new long[]{0, 21});
+
+        NGramMap ngm = load(lines, 5);
+        assertThat(ngm.countHistory("aaa").get(2000)).isWithin(1E-10).of(1);
+        assertThat(ngm.countHistory("bbb").get(2000)).isWithin(1E-10).of(2);
+    }
+
+    @Test
+    public void testLaterLinesWin() throws IOException {
+        /* Small chunks spread the lines of every word over many builders, merged in file order. */
+        StringBuilder lines = new StringBuilder();
+        for (int i = 1; i <= 200; i += 1) {
+            lines.append("word\t2000\t").append(i).append("\n");
+            lines.append("other\t").append(2000 + i % 2).append("\t").append(-i).append("\n");
+        }
+        NGramMap ngm = load(lines.toString(), 16);
+        assertThat(ngm.countHistory("word").get(2000)).isWithin(1E-10).of(200);
+        assertThat(ngm.countHistory("other").get(2000)).isWithin(1E-10).of(-200);
+        assertThat(ngm.countHistory("other").get(2001)).isWithin(1E-10).of(-199);
+        assertThat(ngm.totalCountHistory().get(2001)).isWithin(1E-10).of(2000);
+    }
+
+    @Test
+    public void testRejectsYearsOutOfRange() {
+        for (String year : new String[]{"3000", "1399", "99999999999999999999", "-2000"}) {
+            assertThrows(IllegalArgumentException.class, () -> load("word\t" + year + "\t1\n", 5));
+        }
+    }
+}
@@ -0,0 +1,124 @@
+import ngrams.TimeSeries;
+import org.junit.jupiter.api.Test;
+import plotting.ChartCache;
+import plotting.ChartFormat;
+import plotting.Downsampling;
+import plotting.Plotter;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/** Unit Tests for the Plotter, ChartCache and Downsampling classes. */
+public class PlotterTest {
+    private static TimeSeries series(double... values) {
+        TimeSeries ts = new TimeSeries();
+        for (int i = 0; i < values.length; i += 1) {
+            ts.put(2000 + i, values[i]);
+        }
+        return ts;
+    }
+
+    @Test
+    public void testEncodeChartAsString() throws IOException {
+        List<TimeSeries> lts = List.of(series(1, 2, 3), series(3, 2, 1));
+        String encoded = Plotter.encodeChartAsString(Plotter.generateTimeSeriesChart(List.of("up", "down"), lts));
+        BufferedImage img = ImageIO.read(new ByteArrayInputStream(Base64.getDecoder().decode(encoded)));
+        assertThat(img.getWidth()).isEqualTo(800);
+        assertThat(img.getHeight()).isEqualTo(600);
+
+        /* The pooled render buffer gives the same image the second time. */
+        String again = Plotter.encodeChartAsString(Plotter.generateTimeSeriesChart(List.of("up", "down"), lts));
+        assertThat(again).isEqualTo(encoded);
+    }
+
+    @Test
+    public void testKeyDependsOnContent() {
+        ByteBuffer key = ChartCache.key(List.of("cat"), List.of(series(1, 2)));
+        assertThat(ChartCache.key(List.of("cat"), List.of(series(1, 2)))).isEqualTo(key);
+        assertThat(ChartCache.key(List.of("dog"), List.of(series(1, 2)))).isNotEqualTo(key);
+        assertThat(ChartCache.key(List.of("cat"), List.of(series(1, 3)))).isNotEqualTo(key);
+        assertThat(ChartCache.key(List.of("ca", "t"), List.of(series(), series(1, 2)))).isNotEqualTo(key);
+    }
+
+    @Test
+    public void testCacheEvictsLeastRecentlyUsed() {
+        ChartCache cache = new ChartCache(1000);
+        ByteBuffer a = ChartCache.key(List.of("a"), List.of(series(1)));
+        ByteBuffer b = ChartCache.key(List.of("b"), List.of(series(1)));
+        ByteBuffer c = ChartCache.key(List.of("c"), List.of(series(1)));
+        cache.put(a, "x".repeat(300));
+        cache.put(b, "y".repeat(300));
+        assertThat(cache.get(a)).isNotNull();
+        cache.put(c, "z".repeat(300));
+
+        assertThat(cache.get(b)).isNull();
+        assertThat(cache.get(a)).isNotNull();
+        assertThat(cache.get(c)).isNotNull();
+        assertThat(cache.evictions()).isEqualTo(1L);
+        assertThat(cache.hits()).isEqualTo(3L);
+        assertThat(cache.misses()).isEqualTo(1L);
+        assertThat(cache.bytes()).isAtMost(1000L);
+    }
+
+    @Test
+    public void testLttbKeepsEndsAndPeaks() {
+        int n = 1000;
+        double[] x = new double[n];
+        double[] y = new double[n];
+        for (int i = 0; i < n; i += 1) {
+            x[i] = i;
+            y[i] = i == 437 ? 100 : Math.sin(i / 50.0);
+        }
+        int[] kept = Downsampling.lttb(x, y, 50);
+        assertThat(kept.length).isEqualTo(50);
+        assertThat(kept[0]).isEqualTo(0);
+        assertThat(kept[49]).isEqualTo(n - 1);
+        assertThat(Arrays.stream(kept).boxed().toList()).contains(437);
+        for (int i = 1; i < kept.length; i += 1) {
+            assertThat(kept[i]).isGreaterThan(kept[i - 1]);
+        }
+
+        /* A series no longer than the threshold is kept whole. */
+        assertThat(Downsampling.lttb(new double[]{1, 2}, new double[]{3, 4}, 3)).asList()
+                .containsExactly(0, 1).inOrder();
+        assertThrows(IllegalArgumentException.class, () -> Downsampling.lttb(x, y, 2));
+    }
+
+    @Test
+    public void testSvg() {
+        String svg = Plotter.encodeChartAsSvg(List.of("cat", "a<b"), List.of(series(1, 2, 3), series(3, 2, 1)));
+        assertThat(svg).startsWith("<svg");
+        assertThat(svg).endsWith("</svg>");
+        assertThat(svg.split("<path", -1).length - 1).isEqualTo(2);
+        assertThat(svg).contains("a&lt;b");
+        assertThat(svg).doesNotContain("a<b");
+    }
+
+    @Test
+    public void testPoints() {
+        TimeSeries longSeries = new TimeSeries();
+        for (int year = 1000; year < 2000; year += 1) {
+            longSeries.put(year, (double) year);
+        }
+        String json = Plotter.encodeChartAsPoints(List.of("cat", "long"), List.of(series(1, 2), longSeries));
+        assertThat(json).startsWith("[{\"label\":\"cat\",\"years\":[2000,2001],\"values\":[1.0,2.0]}");
+        assertThat(json.substring(json.indexOf("long")).split(",", -1).length).isAtMost(2 * Plotter.MAX_POINTS + 2);
+    }
+
+    @Test
+    public void testChartFormat() {
+        assertThat(ChartFormat.parse("")).isEqualTo(ChartFormat.PNG);
+        assertThat(ChartFormat.parse(" SVG ")).isEqualTo(ChartFormat.SVG);
+        assertThat(ChartFormat.parse("points")).isEqualTo(ChartFormat.POINTS);
+        assertThrows(IllegalArgumentException.class, () -> ChartFormat.parse("gif"));
+    }
+}
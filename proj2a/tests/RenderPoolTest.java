@@ -0,0 +1,70 @@
+import org.junit.jupiter.api.Test;
+import plotting.RenderPool;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/** Unit Tests for the RenderPool class. */
+public class RenderPoolTest {
+    @Test
+    public void testRenders() {
+        try (RenderPool pool = new RenderPool(2, 2)) {
+            assertThat(pool.render(() -> "chart")).isEqualTo("chart");
+            assertThrows(IllegalStateException.class, () -> pool.render(() -> {
+                throw new IllegalStateException("broken");
+            }));
+            assertThat(pool.rendered()).isEqualTo(2L);
+            assertThat(pool.rejected()).isEqualTo(0L);
+            assertThat(pool.renderNanos()).isGreaterThan(0L);
+        }
+    }
+
+    @Test
+    public void testRejectsWhenQueueIsFull() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService callers = Executors.newFixedThreadPool(2);
+        try (RenderPool pool = new RenderPool(1, 1)) {
+            Future<String> running = callers.submit(() -> pool.render(() -> {
+                started.countDown();
+                awaitUninterruptibly(release);
+                return "first";
+            }));
+            started.await();
+            Future<String> queued = callers.submit(() -> pool.render(() -> "second"));
+            while (pool.queued() == 0) {
+                Thread.sleep(1);
+            }
+
+            /* The only thread is busy and the only queue slot is taken. */
+            assertThat(pool.render(() -> "third")).isNull();
+            assertThat(pool.rejected()).isEqualTo(1L);
+
+            release.countDown();
+            assertThat(running.get()).isEqualTo("first");
+            assertThat(queued.get()).isEqualTo("second");
+            assertThat(pool.rendered()).isEqualTo(2L);
+            assertThat(pool.queueWaitNanos()).isGreaterThan(0L);
+        } finally {
+            callers.shutdown();
+            callers.awaitTermination(10, TimeUnit.SECONDS);
+        }
+    }
+
+    private static void awaitUninterruptibly(CountDownLatch latch) {
+        while (true) {
+            try {
+                latch.await();
+                return;
+            } catch (InterruptedException e) {
+                /* Keep waiting. */
+            }
+        }
+    }
+}
@@ -0,0 +1,71 @@
+import browser.NgordnetQuery;
+import browser.ResponseCache;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static com.google.common.truth.Truth.assertThat;
+
+/** Unit Tests for the ResponseCache class. */
+public class ResponseCacheTest {
+    private static NgordnetQuery query(String... words) {
+        return new NgordnetQuery(List.of(words), 2000, 2020, 0);
+    }
+
+    @Test
+    public void testHitsAndMisses() {
+        ResponseCache cache = new ResponseCache(1 << 20, 60000);
+        assertThat(cache.get(query("cat"), 0)).isNull();
+        cache.put(query("cat"), 0, "meow");
+        assertThat(cache.get(query("cat"), 0)).isEqualTo("meow");
+        assertThat(cache.get(query("cat", "dog"), 0)).isNull();
+
+        assertThat(cache.hits()).isEqualTo(1L);
+        assertThat(cache.misses()).isEqualTo(2L);
+        assertThat(cache.size()).isEqualTo(1);
+    }
+
+    @Test
+    public void testNormalize() {
+        NgordnetQuery spaced = new NgordnetQuery(List.of(" cat", "dog "), 2000, 2020, 0, false, " ma:3 ");
+        NgordnetQuery plain = new NgordnetQuery(List.of("cat", "dog"), 2000, 2020, 0, false, "ma:3");
+        assertThat(ResponseCache.normalize(spaced)).isEqualTo(plain);
+    }
+
+    @Test
+    public void testVersionInvalidates() {
+        ResponseCache cache = new ResponseCache(1 << 20, 60000);
+        cache.put(query("cat"), 3, "meow");
+        assertThat(cache.get(query("cat"), 4)).isNull();
+        assertThat(cache.size()).isEqualTo(0);
+        assertThat(cache.bytes()).isEqualTo(0L);
+    }
+
+    @Test
+    public void testEvictsLeastRecentlyUsed() {
+        String response = "x".repeat(1000);
+        ResponseCache cache = new ResponseCache(5000, 60000);
+        cache.put(query("a"), 0, response);
+        cache.put(query("b"), 0, response);
+        assertThat(cache.get(query("a"), 0)).isEqualTo(response);
+        cache.put(query("c"), 0, response);
+
+        assertThat(cache.get(query("b"), 0)).isNull();
+        assertThat(cache.get(query("a"), 0)).isEqualTo(response);
+        assertThat(cache.get(query("c"), 0)).isEqualTo(response);
+        assertThat(cache.evictions()).isEqualTo(1L);
+        assertThat(cache.bytes()).isAtMost(5000L);
+
+        cache.put(query("huge"), 0, "x".repeat(10000));
+        assertThat(cache.get(query("huge"), 0)).isNull();
+    }
+
+    @Test
+    public void testExpires() throws InterruptedException {
+        ResponseCache cache = new ResponseCache(1 << 20, 1);
+        cache.put(query("cat"), 0, "meow");
+        Thread.sleep(10);
+        assertThat(cache.get(query("cat"), 0)).isNull();
+    }
+}
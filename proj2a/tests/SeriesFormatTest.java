@@ -0,0 +1,78 @@
+import com.google.gson.stream.JsonWriter;
+import main.SeriesFormat;
+import main.WeightHistories;
+import ngrams.TimeSeries;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.List;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/** Unit Tests for the SeriesFormat class. */
+public class SeriesFormatTest {
+    private static WeightHistories.Entry entry(String label, int... yearsThenValues) {
+        TimeSeries ts = new TimeSeries();
+        int half = yearsThenValues.length / 2;
+        for (int i = 0; i < half; i += 1) {
+            ts.put(yearsThenValues[i], yearsThenValues[half + i] / 8.0);
+        }
+        return new WeightHistories.Entry(label, ts);
+    }
+
+    @Test
+    public void testParse() {
+        assertThat(SeriesFormat.parse("")).isEqualTo(SeriesFormat.TEXT);
+        assertThat(SeriesFormat.parse(" JSON")).isEqualTo(SeriesFormat.JSON);
+        assertThat(SeriesFormat.parse("binary")).isEqualTo(SeriesFormat.BINARY);
+        assertThat(SeriesFormat.TEXT.contentType()).isNull();
+        assertThrows(IllegalArgumentException.class, () -> SeriesFormat.parse("xml"));
+        assertThat(SeriesFormat.parseOrText("png")).isEqualTo(SeriesFormat.TEXT);
+        assertThat(SeriesFormat.parseOrText(null)).isEqualTo(SeriesFormat.TEXT);
+        assertThat(SeriesFormat.parseOrText("Binary ")).isEqualTo(SeriesFormat.BINARY);
+    }
+
+    @Test
+    public void testBinaryRoundTrip() throws IOException {
+        List<WeightHistories.Entry> entries = List.of(
+                entry("cat", 1900, 1901, 1905, 3, 4, 5),
+                entry("déjà vu", -50, 2020, 100000, 1, 2, 3),
+                entry("empty"));
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        for (WeightHistories.Entry e : entries) {
+            SeriesFormat.writeBinary(out, e);
+        }
+        List<WeightHistories.Entry> read = SeriesFormat.readBinary(new ByteArrayInputStream(bytes.toByteArray()));
+
+        assertThat(read.size()).isEqualTo(entries.size());
+        for (int i = 0; i < read.size(); i += 1) {
+            assertThat(read.get(i).label()).isEqualTo(entries.get(i).label());
+            assertThat(read.get(i).history().years()).isEqualTo(entries.get(i).history().years());
+            assertThat(read.get(i).history().data()).isEqualTo(entries.get(i).history().data());
+        }
+
+        /* Consecutive years take one byte each: 1 + 3 label bytes, 1 count, 3 years, 3 values. */
+        bytes.reset();
+        SeriesFormat.writeBinary(out, entry("cat", 1900, 1901, 1902, 1, 2, 3));
+        assertThat(bytes.size()).isEqualTo(1 + 3 + 1 + (2 + 1 + 1) + 3 * 8);
+
+        byte[] truncated = Arrays.copyOf(bytes.toByteArray(), bytes.size() - 1);
+        assertThrows(IOException.class, () -> SeriesFormat.readBinary(new ByteArrayInputStream(truncated)));
+    }
+
+    @Test
+    public void testJson() throws IOException {
+        StringWriter text = new StringWriter();
+        JsonWriter json = new JsonWriter(text);
+        SeriesFormat.writeJson(json, entry("cat", 2000, 2001, 4, 12));
+        json.flush();
+        assertThat(text.toString()).isEqualTo("{\"label\":\"cat\",\"years\":[2000,2001],\"values\":[0.5,1.5]}");
+    }
+}
@@ -0,0 +1,89 @@
+import browser.NgordnetQuery;
+import browser.NgordnetQueryHandler;
+import browser.NgordnetServer;
+import browser.ResponseCache;
+import edu.princeton.cs.algs4.Stopwatch;
+
+import java.lang.management.ManagementFactory;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static spark.Spark.awaitInitialization;
+import static spark.Spark.port;
+import static spark.Spark.stop;
+
+/** Fires many concurrent requests at a handler that blocks for a while, as a slow chart
+ *  render or a wait on the render pool would, and reports the throughput together with
+ *  the peak number of threads and the heap in use. Spark serves one server per JVM, so
+ *  run it once per mode and compare:
+ *  Usage: java ServerLoadTest platform|virtual [REQUESTS [BLOCKMILLIS]]
+ */
+public class ServerLoadTest {
+    private static final int PORT = 4568;
+
+    /** Blocks for a fixed time, then echoes the words of the query. */
+    private static class BlockingHandler extends NgordnetQueryHandler {
+        private final long blockMillis;
+
+        BlockingHandler(long blockMillis) {
+            this.blockMillis = blockMillis;
+        }
+
+        @Override
+        public String handle(NgordnetQuery q) {
+            try {
+                Thread.sleep(blockMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return q.words().toString();
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        boolean virtual = args.length > 0 && args[0].equals("virtual");
+        int requests = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+        long blockMillis = args.length > 2 ? Long.parseLong(args[2]) : 200;
+
+        NgordnetServer server = new NgordnetServer();
+        if (virtual) {
+            server.useVirtualThreads();
+        }
+        port(PORT);
+        server.startUp();
+        BlockingHandler handler = new BlockingHandler(blockMillis);
+        /* Every request is distinct and uncached, so each one really blocks. */
+        handler.setCache(new ResponseCache(0, 1));
+        server.register("block", handler);
+        awaitInitialization();
+
+        HttpClient client = HttpClient.newHttpClient();
+        Stopwatch sw = new Stopwatch();
+        List<CompletableFuture<HttpResponse<String>>> responses = new ArrayList<>();
+        for (int i = 0; i < requests; i += 1) {
+            URI uri = URI.create("http://localhost:" + PORT + "/block?words=w" + i);
+            responses.add(client.sendAsync(HttpRequest.newBuilder(uri).build(),
+                    HttpResponse.BodyHandlers.ofString()));
+        }
+        int ok = 0;
+        for (CompletableFuture<HttpResponse<String>> response : responses) {
+            if (response.join().statusCode() == 200) {
+                ok += 1;
+            }
+        }
+        double elapsed = sw.elapsedTime();
+
+        Runtime runtime = Runtime.getRuntime();
+        System.out.printf("%s threads: %d/%d requests ok in %.2f s (%.0f requests/s, ideal %.2f s), "
+                + "peak %d live platform threads, %.1f MB heap in use%n",
+                virtual ? "virtual" : "platform", ok, requests, elapsed, requests / elapsed,
+                blockMillis / 1000.0, ManagementFactory.getThreadMXBean().getPeakThreadCount(),
+                (runtime.totalMemory() - runtime.freeMemory()) / 1e6);
+        stop();
+    }
+}
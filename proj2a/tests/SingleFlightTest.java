@@ -0,0 +1,71 @@
+import browser.SingleFlight;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/** Unit Tests for the SingleFlight class. */
+public class SingleFlightTest {
+    @Test
+    public void testConcurrentCallsShareOneComputation() throws Exception {
+        SingleFlight<String, String> flight = new SingleFlight<>();
+        AtomicInteger computations = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        int callers = 16;
+
+        ExecutorService pool = Executors.newFixedThreadPool(callers);
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            for (int i = 0; i < callers; i += 1) {
+                results.add(pool.submit(() -> flight.run("key", () -> {
+                    computations.incrementAndGet();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        throw new IllegalStateException(e);
+                    }
+                    return "value";
+                })));
+            }
+            while (flight.coalesced() < callers - 1) {
+                Thread.sleep(1);
+            }
+            release.countDown();
+            for (Future<String> result : results) {
+                assertThat(result.get()).isEqualTo("value");
+            }
+        } finally {
+            pool.shutdown();
+        }
+        assertThat(computations.get()).isEqualTo(1);
+        assertThat(flight.inFlight()).isEqualTo(0);
+    }
+
+    @Test
+    public void testSequentialCallsComputeAgain() {
+        SingleFlight<String, Integer> flight = new SingleFlight<>();
+        AtomicInteger computations = new AtomicInteger();
+        assertThat(flight.run("key", computations::incrementAndGet)).isEqualTo(1);
+        assertThat(flight.run("key", computations::incrementAndGet)).isEqualTo(2);
+        assertThat(flight.coalesced()).isEqualTo(0L);
+    }
+
+    @Test
+    public void testFailureReachesCaller() {
+        SingleFlight<String, String> flight = new SingleFlight<>();
+        assertThrows(IllegalArgumentException.class, () -> flight.run("key", () -> {
+            throw new IllegalArgumentException();
+        }));
+        assertThat(flight.inFlight()).isEqualTo(0);
+        assertThat(flight.run("key", () -> "ok")).isEqualTo("ok");
+    }
+}
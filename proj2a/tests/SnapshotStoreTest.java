@@ -0,0 +1,93 @@
+import ngrams.ColumnarStore;
+import ngrams.NGramMap;
+import ngrams.SnapshotStore;
+import ngrams.TimeSeries;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.DoubleBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+
+import static com.google.common.truth.Truth.assertThat;
+
+/** Unit Tests for the SnapshotStore class. */
+public class SnapshotStoreTest {
+    private static final String COUNTS = "2000,1000,1,1\n2001,2000,1,1\n2005,5000,1,1\n";
+
+    private static double[] values(DoubleBuffer column) {
+        double[] values = new double[column.limit()];
+        column.get(0, values);
+        return values;
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        ColumnarStore.Builder builder = new ColumnarStore.Builder();
+        builder.add("zebra", 2001, 100);
+        builder.add("zebra", 2003, 300);
+        builder.add("apple", 2000, 7);
+        builder.add("éclair", 1950, 12.5);
+        builder.add("mango", 2020, 4);
+        builder.addTotal(2000, 1000);
+        builder.addTotal(2001, 2000);
+        ColumnarStore store = builder.build();
+
+        Path snapshot = Files.createTempDirectory("snapshot-store").resolve("words.ngs");
+        SnapshotStore.write(store, snapshot.toString());
+        SnapshotStore opened = SnapshotStore.open(snapshot.toString());
+
+        assertThat(opened.size()).isEqualTo(store.size());
+        NGramMap ngm = new NGramMap(opened);
+        for (int row = 0; row < store.size(); row += 1) {
+            String word = store.word(row);
+            int id = opened.row(word);
+            assertThat(id).isAtLeast(0);
+            assertThat(ngm.wordId(word)).isEqualTo(id);
+            assertThat(opened.word(id)).isEqualTo(word);
+            assertThat(opened.firstYear(id)).isEqualTo(store.firstYear(row));
+            assertThat(values(opened.column(id))).isEqualTo(values(store.column(row)));
+        }
+        assertThat(values(opened.totals())).isEqualTo(values(store.totals()));
+        assertThat(ngm.countHistory("zebra").get(2003)).isWithin(1E-10).of(300);
+
+        assertThat(opened.row("missing")).isEqualTo(-1);
+        assertThat(opened.row("")).isEqualTo(-1);
+        assertThat(ngm.countHistory("missing").size()).isEqualTo(0);
+    }
+
+    @Test
+    public void testRebuildsStaleSnapshot() throws IOException {
+        Path dir = Files.createTempDirectory("snapshot-store");
+        Path words = Files.writeString(dir.resolve("words.csv"), "cat\t2000\t1\t1\n");
+        Path counts = Files.writeString(dir.resolve("counts.csv"), COUNTS);
+        String snapshot = dir.resolve("words.ngs").toString();
+        long now = System.currentTimeMillis();
+        Files.setLastModifiedTime(words, FileTime.fromMillis(now - 20_000));
+        Files.setLastModifiedTime(counts, FileTime.fromMillis(now - 20_000));
+
+        /* A missing snapshot is compiled from the CSV files. */
+        SnapshotStore store = SnapshotStore.open(snapshot, words.toString(), counts.toString());
+        assertThat(values(store.column(store.row("cat")))).isEqualTo(new double[]{1});
+
+        /* A snapshot newer than the CSV files is kept as it is. */
+        Files.writeString(words, "cat\t2000\t2\t1\n");
+        Files.setLastModifiedTime(words, FileTime.fromMillis(now - 10_000));
+        Files.setLastModifiedTime(Path.of(snapshot), FileTime.fromMillis(now - 5_000));
+        store = SnapshotStore.open(snapshot, words.toString(), counts.toString());
+        assertThat(values(store.column(store.row("cat")))).isEqualTo(new double[]{1});
+
+        /* A words file that changed since is compiled again. */
+        Files.setLastModifiedTime(words, FileTime.fromMillis(now - 1_000));
+        store = SnapshotStore.open(snapshot, words.toString(), counts.toString());
+        assertThat(values(store.column(store.row("cat")))).isEqualTo(new double[]{2});
+
+        /* So is a counts file that changed since. */
+        Files.writeString(counts, "2000,9000,1,1\n");
+        Files.setLastModifiedTime(counts, FileTime.fromMillis(now + 60_000));
+        store = SnapshotStore.open(snapshot, words.toString(), counts.toString());
+        assertThat(store.totals().get(2000 - TimeSeries.MIN_YEAR)).isWithin(1E-10).of(9000);
+        assertThat(Files.exists(Path.of(snapshot + ".tmp"))).isFalse();
+    }
+}
@@ -0,0 +1,110 @@
+import ngrams.StreamingStore;
+import ngrams.TimeSeries;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.DoubleBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+
+import static com.google.common.truth.Truth.assertThat;
+
+/** Unit Tests for the StreamingStore class. */
+public class StreamingStoreTest {
+    /* Words are out of order and split into several blocks, as in a words file that was
+     * concatenated from several sources. */
+    private static final String WORDS = "zebra\t2001\t100\t1\n"
+            + "zebra\t2002\t200\t1\n"
+            + "apple\t2000\t300\t1\n"
+            + "mango\t2005\t400\t1\n"
+            + "apple\t2003\t500\t1\n";
+    private static final String COUNTS = "2000,1000,1,1\n2001,2000,1,1\n";
+
+    private static StreamingStore open(Path dir, String words, int cacheSize) throws IOException {
+        Path wordsFile = Files.writeString(dir.resolve("words.csv"), words);
+        Path countsFile = Files.writeString(dir.resolve("counts.csv"), COUNTS);
+        return StreamingStore.open(wordsFile.toString(), countsFile.toString(),
+                dir.resolve("words.idx").toString(), cacheSize);
+    }
+
+    private static double[] values(DoubleBuffer column) {
+        double[] values = new double[column.limit()];
+        column.get(0, values);
+        return values;
+    }
+
+    @Test
+    public void testLookups() throws IOException {
+        Path dir = Files.createTempDirectory("streaming-store");
+        StreamingStore store = open(dir, WORDS, StreamingStore.DEFAULT_CACHE_SIZE);
+
+        assertThat(store.size()).isEqualTo(3);
+        assertThat(store.row("apple")).isEqualTo(0);
+        assertThat(store.row("mango")).isEqualTo(1);
+        assertThat(store.row("zebra")).isEqualTo(2);
+        assertThat(store.row("kiwi")).isEqualTo(-1);
+        assertThat(store.row("")).isEqualTo(-1);
+        assertThat(store.word(0)).isEqualTo("apple");
+        assertThat(store.word(2)).isEqualTo("zebra");
+
+        assertThat(store.firstYear(0)).isEqualTo(2000);
+        double[] apple = values(store.column(0));
+        assertThat(apple.length).isEqualTo(4);
+        assertThat(apple[0]).isEqualTo(300.0);
+        assertThat(Double.isNaN(apple[1])).isTrue();
+        assertThat(apple[3]).isEqualTo(500.0);
+        assertThat(store.firstYear(2)).isEqualTo(2001);
+        double[] zebra = values(store.column(2));
+        assertThat(zebra.length).isEqualTo(2);
+        assertThat(zebra[1]).isEqualTo(200.0);
+        assertThat(store.totals().get(2001 - TimeSeries.MIN_YEAR)).isEqualTo(2000.0);
+    }
+
+    @Test
+    public void testRebuildsIndexOfChangedWordsFile() throws IOException {
+        Path dir = Files.createTempDirectory("streaming-store");
+        Path index = dir.resolve("words.idx");
+        open(dir, WORDS, StreamingStore.DEFAULT_CACHE_SIZE);
+        FileTime built = FileTime.fromMillis(System.currentTimeMillis() + 60_000);
+        Files.setLastModifiedTime(index, built);
+
+        /* An index of the words file as it is now is reused. */
+        StreamingStore store = StreamingStore.open(dir.resolve("words.csv").toString(),
+                dir.resolve("counts.csv").toString(), index.toString(), StreamingStore.DEFAULT_CACHE_SIZE);
+        assertThat(Files.getLastModifiedTime(index)).isEqualTo(built);
+        assertThat(store.row("apple")).isEqualTo(0);
+
+        /* A words file older than the index, but of another length, is indexed again. */
+        store = open(dir, WORDS + "kiwi\t2000\t1\t1\n", StreamingStore.DEFAULT_CACHE_SIZE);
+        assertThat(store.row("kiwi")).isAtLeast(0);
+
+        /* So is one of the same length with another modification time. */
+        Files.setLastModifiedTime(index, built);
+        store = open(dir, WORDS.replace("apple", "grape") + "kiwi\t2000\t1\t1\n",
+                StreamingStore.DEFAULT_CACHE_SIZE);
+        assertThat(store.row("apple")).isEqualTo(-1);
+        assertThat(store.row("grape")).isAtLeast(0);
+    }
+
+    @Test
+    public void testLeastRecentlyUsedEviction() throws IOException {
+        Path dir = Files.createTempDirectory("streaming-store");
+        StreamingStore store = open(dir, WORDS, 2);
+        int apple = store.row("apple");
+        int mango = store.row("mango");
+        int zebra = store.row("zebra");
+        store.column(apple);
+        store.column(mango);
+        store.column(apple);
+        store.column(zebra);
+
+        /* Rewrite the counts in place: rows still in the cache keep the old counts, and
+         * the evicted row is read again. Mango was used least recently, so it went. */
+        Files.writeString(dir.resolve("words.csv"), WORDS.replace("\t100\t", "\t900\t")
+                .replace("\t300\t", "\t700\t").replace("\t400\t", "\t600\t"));
+        assertThat(store.column(apple).get(0)).isEqualTo(300.0);
+        assertThat(store.column(zebra).get(0)).isEqualTo(100.0);
+        assertThat(store.column(mango).get(0)).isEqualTo(600.0);
+    }
+}
@@ -1,3 +1,4 @@
+import ngrams.Smoothing;
 import ngrams.TimeSeries;
 
 import org.junit.jupiter.api.Test;
@@ -7,6 +8,7 @@ import java.util.Arrays;
 import java.util.List;
 
 import static com.google.common.truth.Truth.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 
 /** Unit Tests for the TimeSeries class.
  *  @author Josh Hug
@@ -181,4 +183,83 @@ public class TimeSeriesTest {
             assertThat(quotient.data().get(i)).isWithin(1E-10).of(expectedTotal.get(i));
         }
     }
+
+    @Test
+    public void testMovingAverage() {
+        TimeSeries ts = new TimeSeries();
+        ts.put(2000, 1.0);
+        ts.put(2001, 3.0);
+        ts.put(2002, 5.0);
+        ts.put(2005, 7.0);
+
+        TimeSeries average = ts.movingAverage(2);
+        assertThat(average.years()).isEqualTo(ts.years());
+        assertThat(average.get(2000)).isWithin(1E-10).of(1.0);
+        assertThat(average.get(2001)).isWithin(1E-10).of(2.0);
+        assertThat(average.get(2002)).isWithin(1E-10).of(4.0);
+        // 2003 and 2004 hold no data, so only 2005 is in its window
+        assertThat(average.get(2005)).isWithin(1E-10).of(7.0);
+
+        assertThat(ts.movingAverage(1)).isEqualTo(ts);
+        assertThat(ts.movingAverage(10).get(2005)).isWithin(1E-10).of(4.0);
+        assertThrows(IllegalArgumentException.class, () -> ts.movingAverage(0));
+    }
+
+    @Test
+    public void testEwma() {
+        TimeSeries ts = new TimeSeries();
+        ts.put(2000, 4.0);
+        ts.put(2001, 8.0);
+        ts.put(2003, 0.0);
+
+        TimeSeries smoothed = ts.ewma(0.5);
+        assertThat(smoothed.get(2000)).isWithin(1E-10).of(4.0);
+        assertThat(smoothed.get(2001)).isWithin(1E-10).of(6.0);
+        assertThat(smoothed.get(2003)).isWithin(1E-10).of(3.0);
+
+        assertThat(ts.ewma(1)).isEqualTo(ts);
+        assertThrows(IllegalArgumentException.class, () -> ts.ewma(0));
+        assertThrows(IllegalArgumentException.class, () -> ts.ewma(1.5));
+    }
+
+    @Test
+    public void testDiffAndCumulativeSum() {
+        TimeSeries ts = new TimeSeries();
+        ts.put(1999, 2.0);
+        ts.put(2000, 5.0);
+        ts.put(2002, 4.0);
+
+        TimeSeries delta = ts.diff();
+        assertThat(delta.years()).isEqualTo(Arrays.asList(2000, 2002));
+        assertThat(delta.get(2000)).isWithin(1E-10).of(3.0);
+        assertThat(delta.get(2002)).isWithin(1E-10).of(-1.0);
+
+        TimeSeries total = ts.cumulativeSum();
+        assertThat(total.data()).isEqualTo(Arrays.asList(2.0, 7.0, 11.0));
+
+        assertThat(new TimeSeries().diff()).isEmpty();
+        assertThat(new TimeSeries().cumulativeSum()).isEmpty();
+        assertThat(new TimeSeries().movingAverage(3)).isEmpty();
+    }
+
+    @Test
+    public void testSmoothingSpec() {
+        TimeSeries ts = new TimeSeries();
+        ts.put(2000, 1.0);
+        ts.put(2001, 3.0);
+
+        assertThat(Smoothing.parse("")).isEqualTo(Smoothing.NONE);
+        assertThat(Smoothing.parse("none").apply(ts)).isEqualTo(ts);
+        assertThat(Smoothing.parse("ma:2").apply(ts)).isEqualTo(ts.movingAverage(2));
+        assertThat(Smoothing.parse(" ewma:0.25 ").apply(ts)).isEqualTo(ts.ewma(0.25));
+        assertThat(Smoothing.parse("diff").apply(ts)).isEqualTo(ts.diff());
+        assertThat(Smoothing.parse("cumsum").apply(ts)).isEqualTo(ts.cumulativeSum());
+
+        assertThrows(IllegalArgumentException.class, () -> Smoothing.parse("median"));
+        assertThrows(IllegalArgumentException.class, () -> Smoothing.parse("ma"));
+        assertThrows(IllegalArgumentException.class, () -> Smoothing.parse("ma:x"));
+        assertThrows(IllegalArgumentException.class, () -> Smoothing.parse("ma:0"));
+        assertThrows(IllegalArgumentException.class, () -> Smoothing.parse("ewma:2"));
+        assertThrows(IllegalArgumentException.class, () -> Smoothing.parse("diff:1"));
+    }
 }
@@ -0,0 +1,57 @@
+import browser.VirtualThreadPool;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.truth.Truth.assertThat;
+
+/** Unit Tests for the VirtualThreadPool class. */
+public class VirtualThreadPoolTest {
+    /** Returns a started thread that joins POOL and then counts down JOINED. */
+    private static Thread joiner(VirtualThreadPool pool, CountDownLatch joined) {
+        Thread thread = new Thread(() -> {
+            try {
+                pool.join();
+                joined.countDown();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        thread.start();
+        return thread;
+    }
+
+    @Test
+    public void testJoinWaitsForStop() throws Exception {
+        VirtualThreadPool pool = new VirtualThreadPool();
+        pool.start();
+        CountDownLatch joined = new CountDownLatch(1);
+        Thread thread = joiner(pool, joined);
+
+        /* An idle pool that is still running must not let join return. */
+        assertThat(joined.await(100, TimeUnit.MILLISECONDS)).isFalse();
+        CountDownLatch ran = new CountDownLatch(1);
+        pool.execute(ran::countDown);
+        assertThat(ran.await(1, TimeUnit.SECONDS)).isTrue();
+        assertThat(joined.await(100, TimeUnit.MILLISECONDS)).isFalse();
+
+        pool.stop();
+        assertThat(joined.await(1, TimeUnit.SECONDS)).isTrue();
+        thread.join();
+    }
+
+    @Test
+    public void testJoinAfterRestart() throws Exception {
+        VirtualThreadPool pool = new VirtualThreadPool();
+        pool.start();
+        pool.stop();
+        pool.start();
+        CountDownLatch joined = new CountDownLatch(1);
+        Thread thread = joiner(pool, joined);
+        assertThat(joined.await(100, TimeUnit.MILLISECONDS)).isFalse();
+        pool.stop();
+        assertThat(joined.await(1, TimeUnit.SECONDS)).isTrue();
+        thread.join();
+    }
+}
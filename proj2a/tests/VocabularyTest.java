@@ -0,0 +1,68 @@
+import ngrams.Vocabulary;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static com.google.common.truth.Truth.assertThat;
+
+/** Unit Tests for the Vocabulary class. */
+public class VocabularyTest {
+    @Test
+    public void testAddAssignsDenseIds() {
+        Vocabulary vocabulary = new Vocabulary();
+        assertThat(vocabulary.add("airport")).isEqualTo(0);
+        assertThat(vocabulary.add("request")).isEqualTo(1);
+        assertThat(vocabulary.add("airport")).isEqualTo(0);
+        assertThat(vocabulary.size()).isEqualTo(2);
+
+        assertThat(vocabulary.id("request")).isEqualTo(1);
+        assertThat(vocabulary.id("wandered")).isEqualTo(-1);
+        assertThat(vocabulary.word(0)).isEqualTo("airport");
+    }
+
+    @Test
+    public void testBytesAndStringsAgree() {
+        Vocabulary vocabulary = new Vocabulary();
+        byte[] line = "naïve\t2005\t12".getBytes(StandardCharsets.UTF_8);
+        int tab = 0;
+        while (line[tab] != '\t') {
+            tab += 1;
+        }
+        int id = vocabulary.add(line, 0, tab);
+
+        assertThat(vocabulary.id("naïve")).isEqualTo(id);
+        assertThat(vocabulary.word(id)).isEqualTo("naïve");
+        assertThat(vocabulary.add("")).isEqualTo(id + 1);
+        assertThat(vocabulary.id("")).isEqualTo(id + 1);
+    }
+
+    @Test
+    public void testManyWords() {
+        Vocabulary vocabulary = new Vocabulary();
+        for (int i = 0; i < 10000; i += 1) {
+            assertThat(vocabulary.add("word" + i)).isEqualTo(i);
+        }
+        Vocabulary compact = vocabulary.compact();
+        for (int i = 0; i < 10000; i += 1) {
+            assertThat(compact.id("word" + i)).isEqualTo(i);
+            assertThat(compact.word(i)).isEqualTo("word" + i);
+        }
+        assertThat(compact.id("word10000")).isEqualTo(-1);
+
+        Vocabulary other = new Vocabulary();
+        other.add("word9999");
+        assertThat(vocabulary.add(other, 0)).isEqualTo(9999);
+        assertThat(vocabulary.add(compact, 42)).isEqualTo(42);
+    }
+
+    @Test
+    public void testAddAfterCompactingEmpty() {
+        Vocabulary vocabulary = new Vocabulary().compact();
+        assertThat(vocabulary.add("cat")).isEqualTo(0);
+        assertThat(vocabulary.add("dog")).isEqualTo(1);
+        assertThat(vocabulary.add("cat")).isEqualTo(0);
+        assertThat(vocabulary.word(1)).isEqualTo("dog");
+        assertThat(vocabulary.compact().id("dog")).isEqualTo(1);
+    }
+}
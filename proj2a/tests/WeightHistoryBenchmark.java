@@ -0,0 +1,64 @@
+import edu.princeton.cs.algs4.Stopwatch;
+import ngrams.NGramMap;
+import ngrams.NGramStore;
+import ngrams.ParallelLoader;
+import ngrams.WeightMode;
+
+import java.util.Random;
+
+import static utils.Utils.*;
+
+/** Compares weight queries computed on the fly with precomputed weight columns,
+ *  reporting the time per query and the heap used by each WeightMode.
+ *  Usage: java WeightHistoryBenchmark [WORDSFILE COUNTSFILE]
+ */
+public class WeightHistoryBenchmark {
+    private static final int QUERIES = 200000;
+
+    public static void main(String[] args) {
+        String wordsFile = args.length > 0 ? args[0] : TOP_49887_WORDS_FILE;
+        String countsFile = args.length > 1 ? args[1] : TOTAL_COUNTS_FILE;
+        NGramStore store = ParallelLoader.load(wordsFile, countsFile);
+        long baseHeap = usedHeap();
+        System.out.printf("Loaded %d words, %.1f MB of heap%n", store.size(), baseHeap / 1e6);
+
+        for (WeightMode mode : WeightMode.values()) {
+            Stopwatch sw = new Stopwatch();
+            NGramMap ngm = new NGramMap(store, mode);
+            double setup = sw.elapsedTime();
+
+            /* The first pass also fills LAZY columns; the second measures steady state. */
+            double first = timeQueries(ngm, store);
+            double second = timeQueries(ngm, store);
+            long extraHeap = usedHeap() - baseHeap;
+            System.out.printf("%-12s setup %6.3f s, first pass %6.2f us/query, "
+                    + "second pass %6.2f us/query, extra heap %7.1f MB%n",
+                    mode, setup, first, second, extraHeap / 1e6);
+        }
+    }
+
+    /** Returns the average time in microseconds of a random weight query. */
+    private static double timeQueries(NGramMap ngm, NGramStore store) {
+        Random random = new Random(61);
+        long checksum = 0;
+        Stopwatch sw = new Stopwatch();
+        for (int i = 0; i < QUERIES; i += 1) {
+            String word = store.word(random.nextInt(store.size()));
+            int startYear = 1800 + random.nextInt(150);
+            checksum += ngm.weightView(word, startYear, startYear + 50).toString().length();
+        }
+        double elapsed = sw.elapsedTime();
+        if (checksum == 0) {
+            System.out.println("No data was read");
+        }
+        return elapsed * 1e6 / QUERIES;
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i += 1) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}